@@ -0,0 +1,187 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.management.JMException;
+
+/**
+ * Headless batch mode: runs detection over many scenes without opening any
+ * window and writes the detections as JSON Lines or CSV.
+ *
+ * Usage: java ImageDisplay --batch SCENES [--format jsonl|csv] [--out FILE]
+ * [--workers N] [--queue N] [--size WxH] [--engine clusters|windows] [--budget MS]
+ * [--similarity NAME[:MIN]] [--joint] [--profiles FILE] [--object-tasks]
+ * [--prefilter DENSITY] OBJECT...
+ * where SCENES is a scene .rgb file, a directory of scenes (every .rgb file
+ * not ending in _object.rgb) or a text file listing one scene path per line,
+ * and every OBJECT is an object image or a .model store. The size of the
+ * images is resolved as described in {@link FrameSize}. Scenes are processed
+ * by N workers (all cores by default) and written in input order, a scene
+ * without detections as one empty record (see {@link DetectionWriter}). Stage
+ * timings and counts are published over JMX during the run and printed to
+ * standard error at its end.
+ */
+public class BatchRunner {
+
+	static final String USAGE = "usage: java ImageDisplay --batch SCENES [--format jsonl|csv] [--out FILE]"
+			+ " [--workers N] [--queue N] [--size WxH] [--engine clusters|windows] [--budget MS]"
+			+ " [--similarity NAME[:MIN]] [--joint] [--profiles FILE] [--object-tasks] [--prefilter DENSITY] OBJECT...";
+
+	private final ObjectFinder finder;
+
+	public BatchRunner(ObjectFinder finder) {
+		this.finder = finder;
+	}
+
+	/**
+	 * Runs the batch.
+	 * @param args The arguments following --batch.
+	 * @return The exit code: 0 on success, 1 if some scenes could not be read, 2 on bad arguments.
+	 */
+	public int run(String[] args) {
+		String format = "jsonl";
+		String outPath = null;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int queue = -1;
+		List<String> positional = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("--format") && i + 1 < args.length) {
+					format = args[++i];
+				} else if (args[i].equals("--out") && i + 1 < args.length) {
+					outPath = args[++i];
+				} else if (args[i].equals("--workers") && i + 1 < args.length) {
+					workers = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("--queue") && i + 1 < args.length) {
+					queue = Integer.parseInt(args[++i]);
+				} else {
+					positional.add(args[i]);
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println(USAGE);
+			return 2;
+		}
+		if (queue < 0) {
+			queue = 2 * workers;
+		}
+		if (positional.size() < 2 || !(format.equals("jsonl") || format.equals("csv")) || workers < 1) {
+			System.err.println(USAGE);
+			return 2;
+		}
+
+		List<String> scenes;
+		try {
+			scenes = listScenes(positional.get(0));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 2;
+		}
+		List<ObjectModel> models = finder.loadObjects(positional.subList(1, positional.size()).toArray(new String[0]));
+
+		PrintStream out = System.out;
+		if (outPath != null) {
+			try {
+				out = new PrintStream(outPath, StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return 2;
+			}
+		}
+
+		PipelineStats stats = new PipelineStats();
+		try {
+			stats.register("batch");
+		} catch (JMException e) {
+			System.err.println("metrics not published over JMX: " + e);
+		}
+		PipelineMetrics previous = finder.metrics();
+		finder.setMetrics(stats);
+
+		DetectionWriter writer = new DetectionWriter(out, format);
+		int[] failed = new int[1];
+		try (SceneScheduler scheduler = new SceneScheduler(workers, queue)) {
+			scheduler.process(scenes, scenePath -> detect(scenePath, models), new SceneScheduler.Listener() {
+				@Override
+				public void done(String scene, List<Detection> detections) {
+					writer.write(scene, detections);
+				}
+
+				@Override
+				public void failed(String scene, Throwable cause) {
+					if (cause != null) {
+						cause.printStackTrace();
+					}
+					failed[0]++;
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		} finally {
+			finder.setMetrics(previous);
+			if (out != System.out) {
+				out.close();
+			}
+		}
+		System.err.print(stats.dump());
+		System.err.println(scenes.size() - failed[0] + " of " + scenes.size() + " scenes processed");
+		return failed[0] == 0 ? 0 : 1;
+	}
+
+	// Reads, decodes and searches one scene with the buffers of the calling worker.
+	private List<Detection> detect(String scenePath, List<ObjectModel> models) {
+		StageTimer timer = new StageTimer();
+		timer.start(finder.metrics());
+		RgbFrame frame = finder.readImageRGB(scenePath);
+		if (frame == null) {
+			return null;
+		}
+		timer.lap("read");
+		DetectionWorkspace workspace = finder.workspace();
+		DecodedImage scene = workspace.decode(frame);
+		timer.lap("decode");
+		List<Detection> detections = finder.detectObjects(scene, models, workspace);
+		timer.lap("detect");
+		timer.total("scene");
+		return detections;
+	}
+
+	/**
+	 * Resolves the scenes argument to a list of scene files.
+	 * @param source A scene file, a directory of scenes or a text file listing scenes.
+	 * @return The file paths of the scenes.
+	 * @throws IOException If the directory or list cannot be read.
+	 */
+	static List<String> listScenes(String source) throws IOException {
+		File file = new File(source);
+		List<String> scenes = new ArrayList<>();
+		if (file.isDirectory()) {
+			File[] files = file.listFiles((dir, name) -> name.endsWith(".rgb") && !name.endsWith("_object.rgb"));
+			if (files == null) {
+				throw new IOException("cannot list " + source);
+			}
+			Arrays.sort(files);
+			for (File scene : files) {
+				scenes.add(scene.getPath());
+			}
+		} else if (source.endsWith(".rgb")) {
+			scenes.add(source);
+		} else if (file.isFile()) {
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					scenes.add(line);
+				}
+			}
+		} else {
+			throw new FileNotFoundException(source);
+		}
+		return scenes;
+	}
+}
@@ -0,0 +1,289 @@
+import java.util.Arrays;
+
+/**
+ * Locates the regions of a scene worth labeling for one object, from counts of
+ * its candidate pixels in square blocks at several scales. Level 0 counts the
+ * candidates in blocks of a base side, and every level above sums two by two
+ * blocks of the one below. The blocks holding candidates are labeled at the
+ * coarsest level first, with the number of blocks a cluster can bridge at that
+ * scale, so the gap-bridging range stays small however wide it is in pixels.
+ * Every cluster lies in one region of connected blocks at every level, so
+ * regions with fewer candidates than the smallest cluster are pruned, and each
+ * remaining region is labeled again one level finer, only inside its box,
+ * where it may split into smaller regions or shrink. The boxes left at level 0
+ * are labeled pixel by pixel; pruning only drops candidates that cannot be
+ * part of a cluster large enough, so the clusters found in them are the same
+ * as in the whole scene. The pyramid keeps its buffers between calls.
+ */
+public class CandidatePyramid {
+
+	// Number of levels, level l having blocks of base << l pixels.
+	static final int LEVELS = 4;
+
+	private final int[][] counts = new int[LEVELS][]; // candidates per block of every level, y * grid width + x
+	private final int[] gridWidth = new int[LEVELS];
+	private final int[] gridHeight = new int[LEVELS];
+	private byte[] island = new byte[0]; // occupied blocks of the level being labeled
+	private final ComponentLabeler labeler = new ComponentLabeler();
+	private int[] boxes = new int[16]; // boxes of the current level as x0, y0, x1, y1
+	private int[] nextBoxes = new int[16];
+	private int block;
+	private int width;
+	private long pruned;
+
+	public CandidatePyramid() {
+		for (int l = 0; l < LEVELS; l++) {
+			counts[l] = new int[0];
+		}
+	}
+
+	/**
+	 * Finds the boxes of a scene to label for one object of a candidate scan.
+	 * @param scan The candidate scan.
+	 * @param object The index of the object in the scan, which has candidates.
+	 * @param width The width of the scene.
+	 * @param height The height of the scene.
+	 * @param params The parameters of the object.
+	 * @param block The side of the level 0 blocks in pixels, or 0 for the bounding box of the candidates.
+	 * @param density The share of candidates of a kept level 0 block unless it is next to a denser one,
+	 *                or 0 to keep every block.
+	 * @return The number of boxes, left in {@link #boxes()} in pixels and not overlapping.
+	 */
+	public int locate(MultiObjectScan scan, int object, int width, int height, DetectionParams params, int block,
+					  double density) {
+		this.block = block;
+		this.width = width;
+		pruned = 0;
+		if (block <= 0) {
+			boxes[0] = scan.minX(object);
+			boxes[1] = scan.minY(object);
+			boxes[2] = scan.maxX(object);
+			boxes[3] = scan.maxY(object);
+			return 1;
+		}
+
+		// Climb while the candidates span more than one block of the next level.
+		int top = 0;
+		while (top + 1 < LEVELS && (scan.minX(object) / (block << (top + 1)) < scan.maxX(object) / (block << (top + 1))
+				|| scan.minY(object) / (block << (top + 1)) < scan.maxY(object) / (block << (top + 1)))) {
+			top++;
+		}
+
+		// Level 0 range, aligned to the blocks of the top level so every block above has all its children.
+		int side = block << top;
+		for (int l = 0; l < LEVELS; l++) {
+			gridWidth[l] = (width + (block << l) - 1) / (block << l);
+			gridHeight[l] = (height + (block << l) - 1) / (block << l);
+			if (counts[l].length < gridWidth[l] * gridHeight[l]) {
+				counts[l] = new int[gridWidth[l] * gridHeight[l]];
+			}
+		}
+		if (island.length < gridWidth[0] * gridHeight[0]) {
+			island = new byte[gridWidth[0] * gridHeight[0]];
+		}
+		int bx0 = scan.minX(object) / side << top;
+		int by0 = scan.minY(object) / side << top;
+		int bx1 = Math.min(gridWidth[0] - 1, (scan.maxX(object) / side << top) + (1 << top) - 1);
+		int by1 = Math.min(gridHeight[0] - 1, (scan.maxY(object) / side << top) + (1 << top) - 1);
+
+		// Count the candidates at level 0 and sum them up the levels.
+		int[] base = counts[0];
+		for (int by = by0; by <= by1; by++) {
+			Arrays.fill(base, by * gridWidth[0] + bx0, by * gridWidth[0] + bx1 + 1, 0);
+		}
+		PointStore candidates = scan.candidates();
+		for (int k = candidates.start(object); k < candidates.end(object); k++) {
+			int p = candidates.points[k];
+			base[p / width / block * gridWidth[0] + p % width / block]++;
+		}
+		if (density > 0) {
+			dropSparse(Math.max(1, (int) Math.ceil(density * block * block)), bx0, by0, bx1, by1);
+		}
+		for (int l = 1; l <= top; l++) {
+			int[] below = counts[l - 1];
+			int[] level = counts[l];
+			int belowWidth = gridWidth[l - 1];
+			int belowX1 = bx1 >> (l - 1);
+			int belowY1 = by1 >> (l - 1);
+			for (int by = by0 >> l; by <= by1 >> l; by++) {
+				for (int bx = bx0 >> l; bx <= bx1 >> l; bx++) {
+					int child = 2 * by * belowWidth + 2 * bx;
+					int sum = below[child];
+					if (2 * bx + 1 <= belowX1) {
+						sum += below[child + 1];
+					}
+					if (2 * by + 1 <= belowY1) {
+						sum += below[child + belowWidth];
+						if (2 * bx + 1 <= belowX1) {
+							sum += below[child + belowWidth + 1];
+						}
+					}
+					level[by * gridWidth[l] + bx] = sum;
+				}
+			}
+		}
+
+		// Label the top level as one box, then every level below inside the boxes kept above it.
+		boxes[0] = bx0 >> top;
+		boxes[1] = by0 >> top;
+		boxes[2] = bx1 >> top;
+		boxes[3] = by1 >> top;
+		int count = 1;
+		for (int l = top; l >= 0; l--) {
+			int range = (params.clusterRange + (block << l) - 1) / (block << l);
+			int next = 0;
+			for (int b = 0; b < count; b++) {
+				int x0 = boxes[4 * b];
+				int y0 = boxes[4 * b + 1];
+				int x1 = boxes[4 * b + 2];
+				int y1 = boxes[4 * b + 3];
+				if (l < top) {
+					// The box is one level coarser: take its children, dropping those of pruned blocks.
+					x0 *= 2;
+					y0 *= 2;
+					x1 = Math.min(2 * x1 + 1, bx1 >> l);
+					y1 = Math.min(2 * y1 + 1, by1 >> l);
+				}
+				next = label(l, range, params.minClusterSize, x0, y0, x1, y1, l < top, next);
+			}
+			int[] swap = boxes;
+			boxes = nextBoxes;
+			nextBoxes = swap;
+			count = merge(next);
+		}
+
+		// Level 0 boxes in pixels, within the bounding box of the candidates.
+		for (int b = 0; b < count; b++) {
+			boxes[4 * b] = Math.max(boxes[4 * b] * block, scan.minX(object));
+			boxes[4 * b + 1] = Math.max(boxes[4 * b + 1] * block, scan.minY(object));
+			boxes[4 * b + 2] = Math.min(boxes[4 * b + 2] * block + block - 1, scan.maxX(object));
+			boxes[4 * b + 3] = Math.min(boxes[4 * b + 3] * block + block - 1, scan.maxY(object));
+		}
+		return count;
+	}
+
+	// Clears the level 0 blocks with fewer candidates than dense that are not next to a block with as many.
+	private void dropSparse(int dense, int bx0, int by0, int bx1, int by1) {
+		int[] base = counts[0];
+		int grid = gridWidth[0];
+		for (int by = by0; by <= by1; by++) {
+			for (int b = by * grid + bx0; b <= by * grid + bx1; b++) {
+				island[b] = (byte) (base[b] >= dense ? 1 : 0);
+			}
+		}
+		for (int by = by0; by <= by1; by++) {
+			for (int bx = bx0; bx <= bx1; bx++) {
+				int b = by * grid + bx;
+				if (island[b] != 0 || base[b] == 0) {
+					continue;
+				}
+				boolean near = false;
+				for (int ny = Math.max(by0, by - 1); ny <= Math.min(by1, by + 1) && !near; ny++) {
+					for (int nx = Math.max(bx0, bx - 1); nx <= Math.min(bx1, bx + 1); nx++) {
+						near |= island[ny * grid + nx] == 1;
+					}
+				}
+				if (!near) {
+					island[b] = 2; // cleared below, so it does not count as dense for its neighbors
+				}
+			}
+		}
+		for (int by = by0; by <= by1; by++) {
+			for (int b = by * grid + bx0; b <= by * grid + bx1; b++) {
+				if (island[b] == 2) {
+					pruned += base[b];
+					base[b] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Labels the occupied blocks of a level inside a box, prunes the regions with too
+	 * few candidates and appends the boxes of the others to the next boxes.
+	 * @return The number of next boxes.
+	 */
+	private int label(int l, int range, int minCount, int x0, int y0, int x1, int y1, boolean hasParent, int next) {
+		int[] level = counts[l];
+		int grid = gridWidth[l];
+		for (int by = y0; by <= y1; by++) {
+			for (int bx = x0; bx <= x1; bx++) {
+				int b = by * grid + bx;
+				if (hasParent && counts[l + 1][(by >> 1) * gridWidth[l + 1] + (bx >> 1)] == 0) {
+					level[b] = 0;
+				}
+				island[b] = (byte) (level[b] > 0 ? 1 : 0);
+			}
+		}
+		int regions = labeler.label(island, grid, gridHeight[l], range, x0, y0, x1, y1);
+		PointStore members = labeler.members();
+		for (int r = 0; r < regions; r++) {
+			int count = 0;
+			for (int k = members.start(r); k < members.end(r); k++) {
+				count += level[members.points[k]];
+			}
+			if (count < minCount) {
+				for (int k = members.start(r); k < members.end(r); k++) {
+					level[members.points[k]] = 0;
+				}
+				pruned += count;
+				continue;
+			}
+			if (nextBoxes.length < 4 * (next + 1)) {
+				nextBoxes = Arrays.copyOf(nextBoxes, 2 * nextBoxes.length);
+			}
+			nextBoxes[4 * next] = labeler.minX(r);
+			nextBoxes[4 * next + 1] = labeler.minY(r);
+			nextBoxes[4 * next + 2] = labeler.maxX(r);
+			nextBoxes[4 * next + 3] = labeler.maxY(r);
+			next++;
+		}
+		return next;
+	}
+
+	// Merges overlapping boxes, which could cut the clusters of each other, and returns the number left.
+	private int merge(int count) {
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int a = 0; a < count; a++) {
+				for (int b = count - 1; b > a; b--) {
+					if (boxes[4 * b] <= boxes[4 * a + 2] && boxes[4 * a] <= boxes[4 * b + 2]
+							&& boxes[4 * b + 1] <= boxes[4 * a + 3] && boxes[4 * a + 1] <= boxes[4 * b + 3]) {
+						boxes[4 * a] = Math.min(boxes[4 * a], boxes[4 * b]);
+						boxes[4 * a + 1] = Math.min(boxes[4 * a + 1], boxes[4 * b + 1]);
+						boxes[4 * a + 2] = Math.max(boxes[4 * a + 2], boxes[4 * b + 2]);
+						boxes[4 * a + 3] = Math.max(boxes[4 * a + 3], boxes[4 * b + 3]);
+						count--;
+						System.arraycopy(boxes, 4 * count, boxes, 4 * b, 4);
+						merged = true;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the boxes found by the last call of {@link #locate}, as x0, y0, x1, y1 in pixels.
+	 * @return The boxes, overwritten by the next call.
+	 */
+	public int[] boxes() {
+		return boxes;
+	}
+
+	/**
+	 * Tells whether a candidate pixel of the last object located can be part of a cluster.
+	 * Pixels outside the boxes may be kept too; they are not labeled.
+	 * @param p The packed offset of the pixel.
+	 * @return False if its block was pruned.
+	 */
+	public boolean kept(int p) {
+		return block <= 0 || counts[0][p / width / block * gridWidth[0] + p % width / block] > 0;
+	}
+
+	// Returns the number of candidates pruned by the last call of locate.
+	public long pruned() {
+		return pruned;
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Table and integer based RGB to hue, u and v conversion giving exactly the
+ * bins of the floating point formulas.
+ *
+ * Hue only depends on which component is the largest, the chroma c and the
+ * difference of the two other components, so it is read from one table per
+ * case, filled with the floating point formula itself. U and v are computed as
+ * integer sums divided by 1000 (the coefficients have three decimals); the
+ * floating point formula can only round differently when that sum is an exact
+ * multiple of 1000, and those pixels fall back to it.
+ */
+public class ColorTables {
+
+	// Hue per case, indexed by c * c + c + diff for -c <= diff <= c.
+	private static final short[] HUE_R = new short[256 * 256];
+	private static final short[] HUE_G = new short[256 * 256];
+	private static final short[] HUE_B = new short[256 * 256];
+
+	static {
+		for (int c = 1; c < 256; c++) {
+			for (int diff = -c; diff <= c; diff++) {
+				int ind = c * c + c + diff;
+				HUE_R[ind] = (short) degrees((diff / (double) c) % 6);
+				HUE_G[ind] = (short) degrees((diff / (double) c) + 2);
+				HUE_B[ind] = (short) degrees((diff / (double) c) + 4);
+			}
+		}
+	}
+
+	private static int degrees(double hPrime) {
+		int h = (int) (60 * hPrime);
+		if (h < 0) {
+			h = h + 360;
+		}
+		return h;
+	}
+
+	/**
+	 * Returns the hue of a pixel in degrees.
+	 * @return The hue, or -1 if the pixel is achromatic.
+	 */
+	static int hue(int r, int g, int b) {
+		int bigM = Math.max(r, Math.max(g, b));
+		int c = bigM - Math.min(r, Math.min(g, b));
+		if (c == 0) {
+			return -1;
+		}
+		int offset = c * c + c;
+		if (bigM == r) {
+			return HUE_R[offset + g - b];
+		} else if (bigM == g) {
+			return HUE_G[offset + b - r];
+		} else {
+			return HUE_B[offset + r - g];
+		}
+	}
+
+	/**
+	 * Returns the u component of a pixel.
+	 * @return The u component, or -1 if it is negative.
+	 */
+	static int u(int r, int g, int b) {
+		int sum = -147 * r - 289 * g + 436 * b;
+		int u = sum / 1000;
+		if (u * 1000 == sum) {
+			u = (int) ((-0.147 * (double) r) - (0.289 * (double) g) + (0.436 * (double) b));
+		}
+		return u < 0 ? -1 : u;
+	}
+
+	/**
+	 * Returns the v component of a pixel.
+	 * @return The v component, or -1 if it is negative.
+	 */
+	static int v(int r, int g, int b) {
+		int sum = 615 * r - 515 * g - 100 * b;
+		int v = sum / 1000;
+		if (v * 1000 == sum) {
+			v = (int) ((0.615 * (double) r) - (0.515 * (double) g) - (0.100 * (double) b));
+		}
+		return v < 0 ? -1 : v;
+	}
+
+	// Joint u and v: signed u (-111 to 111) and v (-156 to 156) offset to positive and quantized by JOINT_SHIFT.
+	static final int JOINT_SHIFT = 2;
+	static final int JOINT_U_OFFSET = 112;
+	static final int JOINT_V_OFFSET = 160;
+	static final int JOINT_U_LEVELS = (2 * JOINT_U_OFFSET) >> JOINT_SHIFT;
+	static final int JOINT_V_LEVELS = (2 * JOINT_V_OFFSET) >> JOINT_SHIFT;
+
+	/**
+	 * Returns the joint u and v bin of a pixel. Unlike {@link #u} and {@link #v} it keeps
+	 * negative components; like {@link #hue} it leaves out achromatic pixels, which all
+	 * share the bin of u = v = 0 whatever their brightness.
+	 * @return The bin, u level * JOINT_V_LEVELS + v level, or -1 if the pixel is achromatic.
+	 */
+	static int joint(int r, int g, int b) {
+		if (r == g && g == b) {
+			return -1;
+		}
+		int u = (-147 * r - 289 * g + 436 * b) / 1000;
+		int v = (615 * r - 515 * g - 100 * b) / 1000;
+		return ((u + JOINT_U_OFFSET) >> JOINT_SHIFT) * JOINT_V_LEVELS + ((v + JOINT_V_OFFSET) >> JOINT_SHIFT);
+	}
+}
@@ -0,0 +1,287 @@
+import java.util.Arrays;
+
+/**
+ * Connected-component labeling of a binary island matrix stored as a flat
+ * y * width + x byte array. Two pixels are connected when they are at most
+ * clusterRange columns and one row apart, the same neighborhood the
+ * depth-first cluster search used. The matrix is packed into a bitset and
+ * every row dilated by clusterRange - 1 columns toward the right, see
+ * {@link BinaryMorphology}: two pixels within range then have touching or
+ * diagonal dilated spans, so the neighborhood becomes plain 8-connectivity
+ * whatever the range. The runs of set bits of the dilated rows are united with
+ * the runs they touch in the row above, and the pixels of the matrix take the
+ * component of the run they lie in. The labeler keeps its buffers between
+ * calls, so labeling a frame of the same size allocates nothing.
+ */
+public class ComponentLabeler {
+
+	private long[] bits = new long[0]; // the island matrix, packed
+	private long[] grown = new long[0]; // the packed matrix with its rows dilated
+	private int[] runStart = new int[64]; // runs of set bits of the dilated rows, column of the first
+	private int[] runEnd = new int[64]; // column after the last
+	private int[] rowRuns = new int[1]; // first run of every row, and the number of runs at the end
+	private int[] parent = new int[64]; // union-find forest over runs
+	private int[] runComponent = new int[64]; // component index + 1 of every root run, then of every run
+	private int[] cursor = new int[16]; // next free slot of every component while bucketing
+	private int runs;
+
+	private int count;
+	private int[] minX = new int[16];
+	private int[] minY = new int[16];
+	private int[] maxX = new int[16];
+	private int[] maxY = new int[16];
+	private int[] memberCount = new int[16];
+	private final PointStore members = new PointStore(0);
+
+	/**
+	 * Labels the connected components of an island matrix.
+	 * @param island The island matrix, nonzero for pixels that belong to a cluster.
+	 * @param width The width of the matrix.
+	 * @param height The height of the matrix.
+	 * @param clusterRange The number of columns a cluster can bridge.
+	 * @return The number of components found.
+	 */
+	public int label(byte[] island, int width, int height, int clusterRange) {
+		return label(island, width, height, clusterRange, 0, 0, width - 1, height - 1);
+	}
+
+	/**
+	 * Labels the connected components of an island matrix inside a rectangle,
+	 * pixels outside of it are treated as background and left untouched.
+	 * @param island The island matrix, nonzero for pixels that belong to a cluster.
+	 * @param width The width of the matrix.
+	 * @param height The height of the matrix.
+	 * @param clusterRange The number of columns a cluster can bridge.
+	 * @param x0 The first column of the rectangle.
+	 * @param y0 The first row of the rectangle.
+	 * @param x1 The last column of the rectangle.
+	 * @param y1 The last row of the rectangle.
+	 * @return The number of components found.
+	 */
+	public int label(byte[] island, int width, int height, int clusterRange, int x0, int y0, int x1, int y1) {
+		int columns = x1 - x0 + 1;
+		int rows = y1 - y0 + 1;
+		int words = BinaryMorphology.wordsPerRow(columns);
+		if (bits.length < rows * words) {
+			bits = new long[Math.max(rows * words, bits.length + bits.length / 2)];
+			grown = new long[bits.length];
+		}
+		if (rowRuns.length < rows + 1) {
+			rowRuns = new int[Math.max(rows + 1, rowRuns.length + rowRuns.length / 2)];
+		}
+
+		// Pack the rectangle and close the gaps a cluster can bridge. With a range of 0 pixels
+		// are only connected to the pixel above and below them, so every pixel is a run of its own.
+		BinaryMorphology.pack(island, width, x0, y0, x1, y1, bits);
+		long[] spans = bits;
+		if (clusterRange > 1) {
+			System.arraycopy(bits, 0, grown, 0, rows * words);
+			BinaryMorphology.dilateRows(grown, columns, rows, clusterRange);
+			spans = grown;
+		}
+		int slack = clusterRange > 0 ? 1 : 0; // runs of consecutive rows touch up to this many columns apart
+
+		// First pass: find the runs of every row and unite them with the runs they touch in the row above.
+		runs = 0;
+		for (int y = 0; y < rows; y++) {
+			rowRuns[y] = runs;
+			int open = -1; // first column of a run reaching the end of the previous word
+			for (int w = 0; w < words; w++) {
+				long word = spans[y * words + w];
+				int column = w << 6;
+				if (clusterRange <= 0) {
+					for (; word != 0; word &= word - 1) {
+						int x = column + Long.numberOfTrailingZeros(word);
+						addRun(x, x + 1);
+					}
+					continue;
+				}
+				if (open >= 0) {
+					if (word == -1L) {
+						continue;
+					}
+					int end = Long.numberOfTrailingZeros(~word);
+					addRun(open, column + end);
+					open = -1;
+					word &= -1L << end;
+				}
+				while (word != 0) {
+					int start = Long.numberOfTrailingZeros(word);
+					long clear = ~word & (-1L << start);
+					if (clear == 0) {
+						open = column + start;
+						break;
+					}
+					int end = Long.numberOfTrailingZeros(clear);
+					addRun(column + start, column + end);
+					word &= -1L << end;
+				}
+			}
+			if (open >= 0) {
+				addRun(open, columns);
+			}
+			if (y > 0) {
+				int above = rowRuns[y - 1];
+				for (int r = rowRuns[y]; r < runs; r++) {
+					while (above < rowRuns[y] && runEnd[above] - 1 + slack < runStart[r]) {
+						above++;
+					}
+					for (int a = above; a < rowRuns[y] && runStart[a] <= runEnd[r] - 1 + slack; a++) {
+						merge(r, a);
+					}
+				}
+			}
+		}
+		rowRuns[rows] = runs;
+
+		// Second pass: number the components in scan order of their first pixel and accumulate boxes.
+		Arrays.fill(runComponent, 0, runs, 0);
+		count = 0;
+		for (int y = 0; y < rows; y++) {
+			int r = rowRuns[y];
+			for (int w = 0; w < words; w++) {
+				for (long word = bits[y * words + w]; word != 0; word &= word - 1) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(word);
+					while (runEnd[r] <= x) {
+						r++;
+					}
+					int root = find(r);
+					int c = runComponent[root] - 1;
+					if (c < 0) {
+						c = count++;
+						runComponent[root] = c + 1;
+						ensureComponents(count);
+						minX[c] = x0 + x;
+						minY[c] = y0 + y;
+						maxX[c] = x0 + x;
+						maxY[c] = y0 + y;
+						memberCount[c] = 1;
+					} else {
+						memberCount[c]++;
+						minX[c] = Math.min(minX[c], x0 + x);
+						maxX[c] = Math.max(maxX[c], x0 + x);
+						maxY[c] = y0 + y;
+					}
+				}
+			}
+		}
+		for (int r = 0; r < runs; r++) {
+			runComponent[r] = runComponent[find(r)];
+		}
+
+		// Bucket the pixels by component, in scan order.
+		int total = 0;
+		for (int c = 0; c < count; c++) {
+			total += memberCount[c];
+		}
+		members.reset(width, count, total);
+		int[] start = members.groupStart;
+		for (int c = 0; c < count; c++) {
+			start[c + 1] = start[c] + memberCount[c];
+		}
+		if (cursor.length < count) {
+			cursor = new int[Math.max(count, cursor.length * 2)];
+		}
+		System.arraycopy(start, 0, cursor, 0, count);
+		int[] points = members.points;
+		for (int y = 0; y < rows; y++) {
+			int row = (y0 + y) * width + x0;
+			int r = rowRuns[y];
+			for (int w = 0; w < words; w++) {
+				for (long word = bits[y * words + w]; word != 0; word &= word - 1) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(word);
+					while (runEnd[r] <= x) {
+						r++;
+					}
+					points[cursor[runComponent[r] - 1]++] = row + x;
+				}
+			}
+		}
+		return count;
+	}
+
+	// Appends a run of the row being scanned.
+	private void addRun(int start, int end) {
+		if (runs == runStart.length) {
+			int length = runs * 2;
+			runStart = Arrays.copyOf(runStart, length);
+			runEnd = Arrays.copyOf(runEnd, length);
+			parent = Arrays.copyOf(parent, length);
+			runComponent = Arrays.copyOf(runComponent, length);
+		}
+		runStart[runs] = start;
+		runEnd[runs] = end;
+		parent[runs] = runs;
+		runs++;
+	}
+
+	// Unites two runs and returns the root of the union.
+	private int merge(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+		if (rootA == rootB) {
+			return rootA;
+		}
+		if (rootA < rootB) {
+			parent[rootB] = rootA;
+			return rootA;
+		}
+		parent[rootA] = rootB;
+		return rootB;
+	}
+
+	// Finds the root of a run, halving the path on the way.
+	private int find(int label) {
+		while (parent[label] != label) {
+			parent[label] = parent[parent[label]];
+			label = parent[label];
+		}
+		return label;
+	}
+
+	private void ensureComponents(int n) {
+		if (n > minX.length) {
+			int length = Math.max(n, minX.length * 2);
+			minX = Arrays.copyOf(minX, length);
+			minY = Arrays.copyOf(minY, length);
+			maxX = Arrays.copyOf(maxX, length);
+			maxY = Arrays.copyOf(maxY, length);
+			memberCount = Arrays.copyOf(memberCount, length);
+		}
+	}
+
+	// Returns the number of components of the last labeling.
+	public int count() {
+		return count;
+	}
+
+	// Returns the number of pixels of a component.
+	public int size(int c) {
+		return members.size(c);
+	}
+
+	public int minX(int c) {
+		return minX[c];
+	}
+
+	public int minY(int c) {
+		return minY[c];
+	}
+
+	public int maxX(int c) {
+		return maxX[c];
+	}
+
+	public int maxY(int c) {
+		return maxY[c];
+	}
+
+	/**
+	 * Returns the pixels of every component, one group per component. The store
+	 * is reused by the next labeling.
+	 * @return The pixels of the components.
+	 */
+	public PointStore members() {
+		return members;
+	}
+}
@@ -0,0 +1,303 @@
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A one-time decode of an RGB image into the primitive color planes used by
+ * every detection stage. The hue, u and v conversions are done exactly once per
+ * pixel here, and histograms, image points and cluster histograms all read from
+ * the planes instead of going back to the image. Besides the three single
+ * components, the joint "uv" component quantizes u and v together into one
+ * bin, which separates colors that share a hue or a u or v value. Only joint
+ * models read it, so its plane is decoded from the source image the first
+ * time it is asked for; the source must not change until then.
+ */
+public class DecodedImage {
+
+	// Number of bins per color component.
+	static final int HUE_BINS = 361;
+	static final int UV_BINS = 256;
+
+	static final int JOINT_BINS = ColorTables.JOINT_U_LEVELS * ColorTables.JOINT_V_LEVELS;
+
+	// Color components in the order of component().
+	static final String[] CONVERSIONS = {"h", "u", "v", "uv"};
+
+	// Bits of the mask plane.
+	static final byte CHROMA = 1; // pixel has nonzero chroma (hue is defined)
+	static final byte KEY = 2; // pixel is the (0, 255, 0) object background
+
+	final int width;
+	final int height;
+	final short[] hue; // hue in degrees, -1 if achromatic
+	final short[] u; // u component, -1 if negative
+	final short[] v; // v component, -1 if negative
+	private short[] uv; // joint bin of signed u and v, -1 if achromatic, kept for reuse when stale
+	private volatile boolean jointDecoded; // whether uv holds the joint bins of the source
+	private RgbFrame sourceFrame; // source the joint plane is decoded from, null once it is
+	private BufferedImage sourceImage;
+	final byte[] mask;
+
+	private DecodedImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		int size = width * height;
+		this.hue = new short[size];
+		this.u = new short[size];
+		this.v = new short[size];
+		this.mask = new byte[size];
+	}
+
+	/**
+	 * Decodes every pixel of an image into the hue, u, v and mask planes in a single pass.
+	 * @param img The input image, kept until the joint plane is decoded.
+	 * @return The decoded image.
+	 */
+	public static DecodedImage decode(BufferedImage img) {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		DecodedImage decoded = new DecodedImage(width, height);
+		int[] row = new int[width];
+
+		for (int y = 0; y < height; y++) {
+			img.getRGB(0, y, width, 1, row, 0, width);
+			int ind = y * width;
+			for (int x = 0; x < width; x++) {
+				int pix = row[x];
+				decoded.decodePixel(ind + x, (pix >> 16) & 0xFF, (pix >> 8) & 0xFF, pix & 0xFF);
+			}
+		}
+		decoded.sourceImage = img;
+		return decoded;
+	}
+
+	/**
+	 * Decodes every pixel of a planar frame into the hue, u, v and mask planes in a single pass,
+	 * reading the color planes in place.
+	 * @param frame The input frame, kept until the joint plane is decoded.
+	 * @return The decoded image.
+	 */
+	public static DecodedImage decode(RgbFrame frame) {
+		return decode(frame, null);
+	}
+
+	/**
+	 * Decodes a planar frame into the planes of a previously decoded image of the same size.
+	 * @param frame The input frame, kept until the joint plane is decoded.
+	 * @param reuse The decoded image to overwrite, or null.
+	 * @return The reused image, or a new one if it was null or of another size.
+	 */
+	public static DecodedImage decode(RgbFrame frame, DecodedImage reuse) {
+		DecodedImage decoded = reuse;
+		if (decoded == null || decoded.width != frame.width || decoded.height != frame.height) {
+			decoded = new DecodedImage(frame.width, frame.height);
+		}
+		int size = frame.width * frame.height;
+		for (int ind = 0; ind < size; ind++) {
+			decoded.decodePixel(ind, frame.red(ind), frame.green(ind), frame.blue(ind));
+		}
+		decoded.jointDecoded = false;
+		decoded.sourceFrame = frame;
+		decoded.sourceImage = null;
+		return decoded;
+	}
+
+	/**
+	 * Decodes a rectangle of a frame of the same size into the planes, leaving the other pixels as they are.
+	 * The joint plane is updated if it is decoded, otherwise it is decoded later from this frame.
+	 * @param frame The input frame, equal to the source outside the rectangle.
+	 * @param x0 The first column of the rectangle.
+	 * @param y0 The first row of the rectangle.
+	 * @param x1 The last column of the rectangle.
+	 * @param y1 The last row of the rectangle.
+	 */
+	void decode(RgbFrame frame, int x0, int y0, int x1, int y1) {
+		for (int y = y0; y <= y1; y++) {
+			for (int ind = y * width + x0; ind <= y * width + x1; ind++) {
+				decodePixel(ind, frame.red(ind), frame.green(ind), frame.blue(ind));
+			}
+		}
+		if (jointDecoded) {
+			for (int y = y0; y <= y1; y++) {
+				for (int ind = y * width + x0; ind <= y * width + x1; ind++) {
+					uv[ind] = (short) ColorTables.joint(frame.red(ind), frame.green(ind), frame.blue(ind));
+				}
+			}
+		} else {
+			sourceFrame = frame;
+			sourceImage = null;
+		}
+	}
+
+	// Converts one pixel and stores it in the planes at the given offset.
+	private void decodePixel(int ind, int r, int g, int b) {
+		byte flags = 0;
+
+		// Skip pure green background pixels (0, 255, 0) of object images.
+		if (g == 255 && r == 0 && b == 0) {
+			flags |= KEY;
+		}
+
+		// Hue, u and v, see ColorTables.
+		int h = ColorTables.hue(r, g, b);
+		if (h >= 0) {
+			flags |= CHROMA;
+		}
+
+		hue[ind] = (short) h;
+		u[ind] = (short) ColorTables.u(r, g, b);
+		v[ind] = (short) ColorTables.v(r, g, b);
+		mask[ind] = flags;
+	}
+
+	/**
+	 * Returns the plane of a color component.
+	 * @param conversion The color component identifier ("h" for hue, "v" for value, "u" for u component,
+	 *                   "uv" for joint u and v).
+	 * @return The plane of the component, -1 marks pixels that are not counted.
+	 */
+	public short[] plane(String conversion) {
+		if (conversion.equals("h")) {
+			return hue;
+		} else if (conversion.equals("v")) {
+			return v;
+		} else if (conversion.equals("uv")) {
+			if (!jointDecoded) {
+				decodeJoint();
+			}
+			return uv;
+		} else {
+			return u;
+		}
+	}
+
+	// Decodes the joint plane from the source, once for all the threads reading the image.
+	private synchronized void decodeJoint() {
+		if (jointDecoded) {
+			return;
+		}
+		int size = width * height;
+		if (uv == null) {
+			uv = new short[size];
+		}
+		if (sourceFrame != null) {
+			for (int ind = 0; ind < size; ind++) {
+				uv[ind] = (short) ColorTables.joint(sourceFrame.red(ind), sourceFrame.green(ind), sourceFrame.blue(ind));
+			}
+		} else {
+			int[] row = new int[width];
+			for (int y = 0; y < height; y++) {
+				sourceImage.getRGB(0, y, width, 1, row, 0, width);
+				for (int x = 0; x < width; x++) {
+					int pix = row[x];
+					uv[y * width + x] = (short) ColorTables.joint((pix >> 16) & 0xFF, (pix >> 8) & 0xFF, pix & 0xFF);
+				}
+			}
+		}
+		sourceFrame = null;
+		sourceImage = null;
+		jointDecoded = true;
+	}
+
+	/**
+	 * Returns the index of a color component, for buffers kept per component.
+	 * @param conversion The color component identifier.
+	 * @return 0 for hue, 1 for u, 2 for v, 3 for joint u and v.
+	 */
+	public static int component(String conversion) {
+		if (conversion.equals("h")) {
+			return 0;
+		} else if (conversion.equals("v")) {
+			return 2;
+		} else if (conversion.equals("uv")) {
+			return 3;
+		} else {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns the number of histogram bins of a color component.
+	 * @param conversion The color component identifier.
+	 * @return The number of bins.
+	 */
+	public static int bins(String conversion) {
+		if (conversion.equals("h")) {
+			return HUE_BINS;
+		} else if (conversion.equals("uv")) {
+			return JOINT_BINS;
+		} else {
+			return UV_BINS;
+		}
+	}
+
+	/**
+	 * Computes the histogram of a color component over the whole image, counting
+	 * row strips of large images in parallel.
+	 * @param conversion The color component identifier.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @param skipKey Whether to skip the green background of object images.
+	 * @return The histogram of the component.
+	 */
+	public int[] histogram(String conversion, int threshold, boolean skipKey) {
+		return histogram(conversion, threshold, skipKey, new int[bins(conversion)]);
+	}
+
+	/**
+	 * Computes the histogram of a color component over the whole image into an existing array.
+	 * @param conversion The color component identifier.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @param skipKey Whether to skip the green background of object images.
+	 * @param histy The array to overwrite, of at least the number of bins of the component.
+	 * @return The histogram array.
+	 */
+	public int[] histogram(String conversion, int threshold, boolean skipKey, int[] histy) {
+		return HistogramEngine.COMMON.histogram(this, plane(conversion), bins(conversion), skipKey, threshold, histy);
+	}
+
+	/**
+	 * Computes the histogram of a color component over a group of pixels.
+	 * @param conversion The color component identifier.
+	 * @param pixels The store holding the packed pixel offsets.
+	 * @param group The group of the store to use.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @return The histogram of the component over the pixels.
+	 */
+	public int[] histogram(String conversion, PointStore pixels, int group, int threshold) {
+		return histogram(conversion, pixels, group, threshold, new int[bins(conversion)]);
+	}
+
+	/**
+	 * Computes the histogram of a color component over a group of pixels into an existing array.
+	 * @param conversion The color component identifier.
+	 * @param pixels The store holding the packed pixel offsets.
+	 * @param group The group of the store to use.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @param histy The array to overwrite, of the number of bins of the component.
+	 * @return The histogram array.
+	 */
+	public int[] histogram(String conversion, PointStore pixels, int group, int threshold, int[] histy) {
+		short[] plane = plane(conversion);
+		int[] points = pixels.points;
+		Arrays.fill(histy, 0);
+
+		for (int i = pixels.start(group); i < pixels.end(group); i++) {
+			int bin = plane[points[i]];
+			if (bin < 0) {
+				continue;
+			}
+			histy[bin]++;
+		}
+
+		filter(histy, threshold);
+		return histy;
+	}
+
+	// Non-normalized filtering of the bins below the threshold.
+	static void filter(int[] histy, int threshold) {
+		for (int i = 0; i < histy.length; i++) {
+			if (histy[i] < threshold) {
+				histy[i] = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/**
+ * A cluster of the scene accepted as an occurrence of an object: its bounding
+ * box, its size and how well its colors match the object. Detections are
+ * immutable, so result lists can be shared between threads and drawn later.
+ */
+public final class Detection {
+
+	final String objectName;
+	final int minX;
+	final int minY;
+	final int maxX;
+	final int maxY;
+	final int pixels; // number of pixels in the cluster
+	final double score; // share of the object colors present in the cluster
+
+	public Detection(String objectName, int minX, int minY, int maxX, int maxY, int pixels, double score) {
+		this.objectName = objectName;
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.pixels = pixels;
+		this.score = score;
+	}
+}
@@ -0,0 +1,43 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Draws detections for display. The boxes and labels go onto a copy of the
+ * scene image made at output time, so the scene read by the detection stages
+ * is never written to and no object query sees the marks of another.
+ */
+public class DetectionOverlay {
+
+	// Width of the box borders, in pixels, drawn inside the bounding box.
+	static final int BORDER = 6;
+
+	/**
+	 * Renders detections over a copy of a scene image.
+	 * @param scene The scene image, left unchanged.
+	 * @param detections The detections to mark.
+	 * @return A new image of the scene with a box and a label per detection.
+	 */
+	public static BufferedImage render(BufferedImage scene, List<Detection> detections) {
+		BufferedImage overlay = new BufferedImage(scene.getWidth(), scene.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = overlay.createGraphics();
+		g.drawImage(scene, 0, 0, null);
+		g.setColor(Color.BLACK);
+		for (Detection d : detections) {
+			int width = d.maxX - d.minX + 1;
+			int height = d.maxY - d.minY + 1;
+
+			// Draw boundaries around the cluster, clipped to the image.
+			g.fillRect(d.minX, d.minY, width, Math.min(BORDER, height));
+			g.fillRect(d.minX, Math.max(d.minY, d.maxY - BORDER + 1), width, Math.min(BORDER, height));
+			g.fillRect(d.minX, d.minY, Math.min(BORDER, width), height);
+			g.fillRect(Math.max(d.minX, d.maxX - BORDER + 1), d.minY, Math.min(BORDER, width), height);
+
+			// Draw the label inside the box.
+			g.drawString(d.objectName, d.minX + 10, d.maxY - 10);
+		}
+		g.dispose();
+		return overlay;
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * The thresholds used to detect one object: which color component to compare,
+ * how histograms are filtered and how clusters are found and accepted.
+ */
+public class DetectionParams {
+
+	final String conversion; // "h" for hue, "v" for value, "u" for u component, "uv" for joint u and v bins
+	final int imageThreshold; // filtering of the scene histogram
+	final int objectThreshold; // filtering of the object histogram
+	final double existThreshold; // share of object colors that must be in the scene
+	final int clusterThreshold; // filtering of the cluster histograms
+	final double clusterExistThreshold; // share of object colors that must be in a cluster
+	final int minClusterSize; // smallest cluster considered, in pixels
+	final int clusterRange; // number of columns a cluster can bridge
+
+	public DetectionParams(String conversion, int imageThreshold, int objectThreshold, double existThreshold,
+						   int clusterThreshold, double clusterExistThreshold, int minClusterSize, int clusterRange) {
+		this.conversion = conversion;
+		this.imageThreshold = imageThreshold;
+		this.objectThreshold = objectThreshold;
+		this.existThreshold = existThreshold;
+		this.clusterThreshold = clusterThreshold;
+		this.clusterExistThreshold = clusterExistThreshold;
+		this.minClusterSize = minClusterSize;
+		this.clusterRange = clusterRange;
+	}
+}
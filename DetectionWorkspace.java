@@ -0,0 +1,110 @@
+/**
+ * The buffers one thread reuses from scene to scene: the decoded scenes, the
+ * histograms, the candidate scan, the island matrix, the component labeler
+ * and the stage timer. Decoded scenes are pooled per resolution, so
+ * alternating between camera sizes does not reallocate them; the other
+ * buffers grow to the largest scene seen. A workspace must only be used by
+ * one thread at a time.
+ */
+public class DetectionWorkspace {
+
+	// Number of resolutions whose decoded scene is kept.
+	static final int RESOLUTIONS = 4;
+
+	DecodedImage scene; // last scene decoded by this thread, overwritten by the next one of its size
+	private final DecodedImage[] scenes = new DecodedImage[RESOLUTIONS]; // most recently used first
+	final MultiObjectScan scan = new MultiObjectScan();
+	final ComponentLabeler labeler = new ComponentLabeler();
+	byte[] island = new byte[0]; // island matrix, cleared after every object query
+	final StageTimer timer = new StageTimer();
+
+	// Histograms per color component (hue, u, v, joint uv): raw scene, filtered scene and cluster.
+	final int[][] sceneGrams = newGrams();
+	final boolean[] sceneCounted = new boolean[DecodedImage.CONVERSIONS.length];
+	final int[][] imgGrams = newGrams();
+	final int[][] clusterGrams = newGrams();
+
+	// Regions to label per object, and the order of the clusters accepted in them.
+	final CandidatePyramid pyramid = new CandidatePyramid();
+	long[] detectionOrder = new long[16]; // accepted clusters as first pixel << 32 | index, for sorting
+
+	// Per object: its color component and pool, null when it is not searched.
+	String[] conversions = new String[0];
+	int[][] poolGrams = new int[0][];
+	private int[][] poolBuffers = new int[0][];
+
+	// Sliding-window engine: region index per color component and the candidate summed-area table.
+	private final RegionHistogramIndex[] regionIndexes = new RegionHistogramIndex[DecodedImage.CONVERSIONS.length];
+	private int[] candidateSums = new int[0];
+
+	private static int[][] newGrams() {
+		int[][] grams = new int[DecodedImage.CONVERSIONS.length][];
+		for (int c = 0; c < grams.length; c++) {
+			grams[c] = new int[DecodedImage.bins(DecodedImage.CONVERSIONS[c])];
+		}
+		return grams;
+	}
+
+	// Sizes the per-object buffers for a number of objects.
+	void objects(int count) {
+		if (conversions.length != count) {
+			conversions = new String[count];
+			poolGrams = new int[count][];
+			poolBuffers = new int[count][];
+		}
+	}
+
+	// Returns the pool buffer of an object with a number of bins.
+	int[] poolBuffer(int object, int bins) {
+		if (poolBuffers[object] == null || poolBuffers[object].length != bins) {
+			poolBuffers[object] = new int[bins];
+		}
+		return poolBuffers[object];
+	}
+
+	/**
+	 * Decodes a frame into the pooled scene of its resolution.
+	 * @param frame The frame to decode.
+	 * @return The decoded scene, overwritten by the next frame of the same size.
+	 */
+	DecodedImage decode(RgbFrame frame) {
+		int found = RESOLUTIONS - 1; // evict the least recently used size if this one is new
+		for (int i = 0; i < RESOLUTIONS; i++) {
+			if (scenes[i] == null || (scenes[i].width == frame.width && scenes[i].height == frame.height)) {
+				found = i;
+				break;
+			}
+		}
+		scene = DecodedImage.decode(frame, scenes[found]);
+		System.arraycopy(scenes, 0, scenes, 1, found);
+		scenes[0] = scene;
+		return scene;
+	}
+
+	// Returns the region index of a color component, built by the caller.
+	RegionHistogramIndex regionIndex(String conversion) {
+		int component = DecodedImage.component(conversion);
+		if (regionIndexes[component] == null) {
+			// Joint histograms have thousands of bins, so their corners are kept four times as sparse.
+			int tile = conversion.equals("uv") ? 2 * RegionHistogramIndex.TILE : RegionHistogramIndex.TILE;
+			regionIndexes[component] = new RegionHistogramIndex(conversion, false, tile);
+		}
+		return regionIndexes[component];
+	}
+
+	// Returns a buffer for a summed-area table of at least a size, still holding the table of the previous scene.
+	int[] candidateSums(int size) {
+		if (candidateSums.length < size) {
+			candidateSums = new int[size];
+		}
+		return candidateSums;
+	}
+
+	// Returns an island matrix of at least the size of a scene, all zero.
+	byte[] island(int size) {
+		if (island.length < size) {
+			island = new byte[size];
+		}
+		return island;
+	}
+}
@@ -0,0 +1,109 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes detections as JSON Lines (one object per detection) or as CSV with a header row.
+ * Detections are keyed by the scene file, or by the frame number in a stream. A scene
+ * without detections still gets one record, {"scene":...,"detections":0} in JSON Lines
+ * or a row with empty detection fields in CSV, so every scene read appears in the output;
+ * frames without detections are skipped.
+ */
+public class DetectionWriter {
+
+	private final PrintStream out;
+	private final boolean csv;
+	private final String key;
+
+	/**
+	 * @param out The stream to write to.
+	 * @param format "jsonl" or "csv".
+	 */
+	public DetectionWriter(PrintStream out, String format) {
+		this(out, format, "scene");
+	}
+
+	/**
+	 * @param out The stream to write to.
+	 * @param format "jsonl" or "csv".
+	 * @param key The name of the first field, "scene" or "frame".
+	 */
+	public DetectionWriter(PrintStream out, String format, String key) {
+		this.out = out;
+		this.csv = format.equals("csv");
+		this.key = key;
+		if (csv) {
+			out.println(key + ",object,minX,minY,maxX,maxY,pixels,score");
+		}
+	}
+
+	/**
+	 * Writes the detections of one scene, or an empty record if there are none.
+	 * @param scene The file path of the scene.
+	 * @param detections The detections found in it.
+	 */
+	public void write(String scene, List<Detection> detections) {
+		String keyValue = csv ? csvField(scene) : jsonString(scene);
+		if (!detections.isEmpty()) {
+			writeKeyed(keyValue, detections);
+		} else if (csv) {
+			out.println(keyValue + ",,,,,,,");
+			out.flush();
+		} else {
+			out.println("{\"" + key + "\":" + keyValue + ",\"detections\":0}");
+			out.flush();
+		}
+	}
+
+	/**
+	 * Writes the detections of one frame of a stream.
+	 * @param frame The number of the frame, from 0.
+	 * @param detections The detections found in it.
+	 */
+	public void write(long frame, List<Detection> detections) {
+		if (!detections.isEmpty()) {
+			writeKeyed(Long.toString(frame), detections);
+		}
+	}
+
+	// Writes detections under an already quoted key value.
+	private void writeKeyed(String keyValue, List<Detection> detections) {
+		for (Detection d : detections) {
+			String score = String.format(Locale.ROOT, "%.4f", d.score);
+			if (csv) {
+				out.println(keyValue + "," + csvField(d.objectName) + "," + d.minX + "," + d.minY + ","
+						+ d.maxX + "," + d.maxY + "," + d.pixels + "," + score);
+			} else {
+				out.println("{\"" + key + "\":" + keyValue + ",\"object\":" + jsonString(d.objectName)
+						+ ",\"minX\":" + d.minX + ",\"minY\":" + d.minY + ",\"maxX\":" + d.maxX + ",\"maxY\":" + d.maxY
+						+ ",\"pixels\":" + d.pixels + ",\"score\":" + score + "}");
+			}
+		}
+		out.flush();
+	}
+
+	// Quotes a CSV field if it contains a separator, a quote or a line break.
+	static String csvField(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	// Quotes and escapes a JSON string.
+	static String jsonString(String value) {
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == '"' || ch == '\\') {
+				sb.append('\\').append(ch);
+			} else if (ch < 0x20) {
+				sb.append(String.format("\\u%04x", (int) ch));
+			} else {
+				sb.append(ch);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
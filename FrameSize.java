@@ -0,0 +1,117 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * The dimensions of a raw planar RGB file, which has no header of its own. The
+ * size of a file is taken from a sidecar next to it (the file name followed by
+ * .size, holding e.g. "1920x1080"), else from the size given on the command
+ * line if the file length is exactly one frame of it (a whole number of frames
+ * for a stream), else from its length when it matches one of the common sizes.
+ * An image whose length matches none of them is rejected rather than read
+ * truncated; a stream is read at the given size or the default 640x480 with a
+ * warning. Scenes and object images of different sizes can so be mixed in one run.
+ */
+public class FrameSize {
+
+	static final FrameSize DEFAULT = new FrameSize(640, 480);
+
+	// Sizes recognized by the file length alone.
+	static final FrameSize[] COMMON = {DEFAULT, new FrameSize(1280, 720), new FrameSize(1280, 960),
+			new FrameSize(1920, 1080), new FrameSize(2560, 1440), new FrameSize(3840, 2160)};
+
+	final int width;
+	final int height;
+
+	public FrameSize(int width, int height) {
+		if (width < 1 || height < 1 || (long) width * height * 3 > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("unsupported frame size " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Parses a size written as WIDTHxHEIGHT.
+	 * @param text The size, e.g. "1920x1080".
+	 * @return The size.
+	 * @throws IllegalArgumentException If the text is not a valid size.
+	 */
+	public static FrameSize parse(String text) {
+		int x = text.trim().toLowerCase().indexOf('x');
+		if (x < 0) {
+			throw new IllegalArgumentException("frame size must be WIDTHxHEIGHT: " + text);
+		}
+		return new FrameSize(Integer.parseInt(text.trim().substring(0, x)), Integer.parseInt(text.trim().substring(x + 1)));
+	}
+
+	/**
+	 * Resolves the size of a planar RGB image file.
+	 * @param imgPath The file path of the image.
+	 * @param given The size given on the command line, or null.
+	 * @return The size of the file.
+	 * @throws IOException If the sidecar cannot be read or is not a valid size, or the file length matches no size.
+	 */
+	public static FrameSize of(String imgPath, FrameSize given) throws IOException {
+		return resolve(imgPath, given, false);
+	}
+
+	/**
+	 * Resolves the frame size of a planar RGB stream, which holds any number of frames.
+	 * @param source The file path of the stream, a FIFO or - for standard input.
+	 * @param given The size given on the command line, or null.
+	 * @return The size of the frames.
+	 * @throws IOException If the sidecar cannot be read or is not a valid size.
+	 */
+	public static FrameSize ofStream(String source, FrameSize given) throws IOException {
+		return resolve(source, given, true);
+	}
+
+	private static FrameSize resolve(String path, FrameSize given, boolean stream) throws IOException {
+		File sidecar = new File(path + ".size");
+		if (sidecar.isFile()) {
+			List<String> lines = Files.readAllLines(sidecar.toPath(), StandardCharsets.UTF_8);
+			try {
+				return parse(lines.isEmpty() ? "" : lines.get(0));
+			} catch (IllegalArgumentException e) {
+				throw new IOException(sidecar + ": " + e.getMessage());
+			}
+		}
+		FrameSize fallback = given != null ? given : DEFAULT;
+		File file = new File(path);
+		if (!file.isFile()) {
+			return fallback; // pipes and standard input have no length, missing files fail when read
+		}
+		long length = file.length();
+		if (given != null && (length == given.frameLength()
+				|| stream && length > 0 && length % given.frameLength() == 0)) {
+			return given;
+		}
+		for (FrameSize size : COMMON) {
+			if (size.frameLength() == length) {
+				return size;
+			}
+		}
+		if (stream) {
+			if (length % fallback.frameLength() != 0) {
+				System.err.println(path + " has " + length + " bytes, not a whole number of " + fallback + " frames");
+			}
+			return fallback;
+		}
+		throw new IOException(path + " has " + length + " bytes, which matches "
+				+ (given != null ? "neither " + given + " nor" : "none of") + " the common frame sizes;"
+				+ " give its size in " + sidecar);
+	}
+
+	// Number of bytes of one planar frame of this size.
+	long frameLength() {
+		return (long) width * height * 3;
+	}
+
+	@Override
+	public String toString() {
+		return width + "x" + height;
+	}
+}
@@ -0,0 +1,113 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the histogram of a decoded plane with fork-join: the image is split
+ * into row strips, every strip is counted into its own partial histogram and
+ * the partial histograms are summed when the strips are joined. The threshold
+ * is applied to the merged histogram only, so the result is the same as a
+ * sequential count. Small images, and any image when the pool has a single
+ * thread, are counted directly on the calling thread without allocating.
+ */
+public class HistogramEngine {
+
+	// Strips of at most this many pixels are counted on one thread.
+	static final int STRIP_PIXELS = 1 << 16;
+
+	static final HistogramEngine COMMON = new HistogramEngine(ForkJoinPool.commonPool());
+
+	private final ForkJoinPool pool;
+
+	public HistogramEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Computes the histogram of a plane.
+	 * @param img The decoded image.
+	 * @param plane The plane of the image to count, -1 marks pixels that are not counted.
+	 * @param bins The number of bins.
+	 * @param skipKey Whether to skip the green background of object images.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @return The histogram of the plane.
+	 */
+	public int[] histogram(DecodedImage img, short[] plane, int bins, boolean skipKey, int threshold) {
+		return histogram(img, plane, bins, skipKey, threshold, new int[bins]);
+	}
+
+	/**
+	 * Computes the histogram of a plane into an existing array.
+	 * @param img The decoded image.
+	 * @param plane The plane of the image to count, -1 marks pixels that are not counted.
+	 * @param bins The number of bins.
+	 * @param skipKey Whether to skip the green background of object images.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @param histy The array to overwrite with the histogram, of at least bins entries.
+	 * @return The histogram array.
+	 */
+	public int[] histogram(DecodedImage img, short[] plane, int bins, boolean skipKey, int threshold, int[] histy) {
+		Arrays.fill(histy, 0);
+		if (img.width * img.height <= STRIP_PIXELS || pool.getParallelism() == 1) {
+			count(img, plane, skipKey, 0, img.height, histy);
+		} else {
+			System.arraycopy(pool.invoke(new Strip(img, plane, bins, skipKey, 0, img.height)), 0, histy, 0, bins);
+		}
+		DecodedImage.filter(histy, threshold);
+		return histy;
+	}
+
+	// Adds the pixels of a range of rows to a histogram.
+	private static void count(DecodedImage img, short[] plane, boolean skipKey, int fromRow, int toRow, int[] histy) {
+		byte[] mask = img.mask;
+		int to = toRow * img.width;
+		for (int i = fromRow * img.width; i < to; i++) {
+			int bin = plane[i];
+			if (bin < 0 || (skipKey && (mask[i] & DecodedImage.KEY) != 0)) {
+				continue;
+			}
+			histy[bin]++;
+		}
+	}
+
+	// Counts a range of rows, splitting it in halves until strips are small enough.
+	private static class Strip extends RecursiveTask<int[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final DecodedImage img;
+		private final short[] plane;
+		private final int bins;
+		private final boolean skipKey;
+		private final int fromRow;
+		private final int toRow;
+
+		Strip(DecodedImage img, short[] plane, int bins, boolean skipKey, int fromRow, int toRow) {
+			this.img = img;
+			this.plane = plane;
+			this.bins = bins;
+			this.skipKey = skipKey;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected int[] compute() {
+			if ((toRow - fromRow) * img.width <= STRIP_PIXELS || toRow - fromRow < 2) {
+				int[] histy = new int[bins];
+				count(img, plane, skipKey, fromRow, toRow, histy);
+				return histy;
+			}
+			int mid = (fromRow + toRow) >>> 1;
+			Strip top = new Strip(img, plane, bins, skipKey, fromRow, mid);
+			Strip bottom = new Strip(img, plane, bins, skipKey, mid, toRow);
+			top.fork();
+			int[] histy = bottom.compute();
+			int[] partial = top.join();
+			for (int i = 0; i < bins; i++) {
+				histy[i] += partial[i];
+			}
+			return histy;
+		}
+	}
+}
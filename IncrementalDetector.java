@@ -0,0 +1,349 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Detects objects in consecutive frames of a video, redoing only the work
+ * where the frame changed. Frames are compared tile by tile; changed tiles are
+ * decoded again and their pixels moved between the bins of the scene
+ * histograms. The clusters of every object are kept from frame to frame and
+ * only regions around changed tiles are labeled again: a region grows until no
+ * kept cluster is within cluster range of it, so every cluster found in it is
+ * complete and every kept cluster outside of it is unchanged. When the bins an
+ * object is searched in change, its whole frame is labeled again. Every frame
+ * gives the same detections as {@link ObjectFinder#detectObjects}.
+ *
+ * A detector keeps the state of one stream and must only be used by one thread.
+ */
+public class IncrementalDetector {
+
+	// Side of the square tiles frames are compared by, in pixels.
+	static final int TILE = 32;
+
+	private final ObjectFinder finder;
+	private final List<ObjectModel> models;
+	private final ObjectState[] states;
+	private final DetectionWorkspace workspace = new DetectionWorkspace();
+	private final StageTimer timer = new StageTimer();
+	// Raw scene histograms per color component, kept up to date tile by tile; null for components no object uses.
+	private final int[][] sceneGrams = new int[DecodedImage.CONVERSIONS.length][];
+	private final List<int[]> dirty = new ArrayList<>(); // changed tiles as x0, y0, x1, y1
+	private DecodedImage scene;
+	private byte[] previous = new byte[0];
+	private byte[] current = new byte[0];
+	private long[] order = new long[0]; // accepted clusters as first pixel << 32 | index, for sorting
+
+	// The clusters of one object in the last frame, as parallel arrays.
+	private static class ObjectState {
+		int[] pool; // the bins the object was searched in, null if it was absent
+		int[] nextPool;
+		int count;
+		int[] minX = new int[64];
+		int[] minY = new int[64];
+		int[] maxX = new int[64];
+		int[] maxY = new int[64];
+		int[] first = new int[64]; // offset of the first pixel in scan order, -1 once the cluster is dropped
+		Detection[] detection = new Detection[64]; // null for rejected clusters
+
+		void add(int x0, int y0, int x1, int y1, int firstPixel, Detection accepted) {
+			if (count == first.length) {
+				int length = count * 2;
+				minX = Arrays.copyOf(minX, length);
+				minY = Arrays.copyOf(minY, length);
+				maxX = Arrays.copyOf(maxX, length);
+				maxY = Arrays.copyOf(maxY, length);
+				first = Arrays.copyOf(first, length);
+				detection = Arrays.copyOf(detection, length);
+			}
+			minX[count] = x0;
+			minY[count] = y0;
+			maxX[count] = x1;
+			maxY[count] = y1;
+			first[count] = firstPixel;
+			detection[count] = accepted;
+			count++;
+		}
+
+		// Removes the dropped clusters.
+		void compact() {
+			int kept = 0;
+			for (int k = 0; k < count; k++) {
+				if (first[k] < 0) {
+					continue;
+				}
+				minX[kept] = minX[k];
+				minY[kept] = minY[k];
+				maxX[kept] = maxX[k];
+				maxY[kept] = maxY[k];
+				first[kept] = first[k];
+				detection[kept] = detection[k];
+				kept++;
+			}
+			Arrays.fill(detection, kept, count, null);
+			count = kept;
+		}
+	}
+
+	/**
+	 * @param finder The finder whose thresholds and metrics are used.
+	 * @param models The objects to look for in every frame.
+	 */
+	public IncrementalDetector(ObjectFinder finder, List<ObjectModel> models) {
+		this.finder = finder;
+		this.models = models;
+		this.states = new ObjectState[models.size()];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = new ObjectState();
+		}
+		for (ObjectModel model : models) {
+			int c = DecodedImage.component(model.params.conversion);
+			if (sceneGrams[c] == null) {
+				sceneGrams[c] = new int[DecodedImage.bins(model.params.conversion)];
+			}
+		}
+	}
+
+	/**
+	 * Detects every object in the next frame of the stream.
+	 * @param frame The frame, which may be overwritten once the call returns.
+	 * @return The clusters found, in object order, as a list that cannot be modified.
+	 */
+	public List<Detection> detect(RgbFrame frame) {
+		timer.start(finder.metrics());
+		int length = frame.width * frame.height * 3;
+		if (current.length != length) {
+			current = new byte[length];
+			previous = new byte[length];
+		}
+		frame.data.get(0, current, 0, length);
+
+		// Decode the changed tiles, or the whole frame for the first one.
+		dirty.clear();
+		if (scene == null || scene.width != frame.width || scene.height != frame.height) {
+			scene = DecodedImage.decode(frame, scene);
+			for (int c = 0; c < DecodedImage.CONVERSIONS.length; c++) {
+				if (sceneGrams[c] != null) {
+					scene.histogram(DecodedImage.CONVERSIONS[c], 0, false, sceneGrams[c]);
+				}
+			}
+			for (ObjectState state : states) {
+				state.pool = null;
+			}
+		} else {
+			diffTiles(frame);
+		}
+		byte[] swap = previous;
+		previous = current;
+		current = swap;
+		timer.lap("tile diff");
+		timer.count("dirty tiles", dirty.size());
+
+		List<Detection> detections = new ArrayList<>();
+		for (int i = 0; i < states.length; i++) {
+			detectObject(models.get(i), states[i], detections);
+		}
+		timer.lap("relabel");
+		timer.count("detections", detections.size());
+		return Collections.unmodifiableList(detections);
+	}
+
+	// Compares the frame with the previous one tile by tile; changed tiles are decoded again.
+	private void diffTiles(RgbFrame frame) {
+		int width = frame.width;
+		int height = frame.height;
+		for (int ty = 0; ty < height; ty += TILE) {
+			for (int tx = 0; tx < width; tx += TILE) {
+				int x1 = Math.min(tx + TILE, width) - 1;
+				int y1 = Math.min(ty + TILE, height) - 1;
+				if (!tileChanged(width, height, tx, ty, x1, y1)) {
+					continue;
+				}
+				countTile(tx, ty, x1, y1, -1);
+				scene.decode(frame, tx, ty, x1, y1);
+				countTile(tx, ty, x1, y1, 1);
+				dirty.add(new int[] {tx, ty, x1, y1});
+			}
+		}
+	}
+
+	private boolean tileChanged(int width, int height, int x0, int y0, int x1, int y1) {
+		for (int plane = 0; plane < 3; plane++) {
+			for (int y = y0; y <= y1; y++) {
+				int from = plane * width * height + y * width + x0;
+				int to = from + x1 - x0 + 1;
+				if (!Arrays.equals(current, from, to, previous, from, to)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// Adds (sign 1) or removes (sign -1) the pixels of a rectangle from the scene histograms.
+	private void countTile(int x0, int y0, int x1, int y1, int sign) {
+		for (int c = 0; c < DecodedImage.CONVERSIONS.length; c++) {
+			int[] histy = sceneGrams[c];
+			if (histy == null) {
+				continue;
+			}
+			short[] plane = scene.plane(DecodedImage.CONVERSIONS[c]);
+			for (int y = y0; y <= y1; y++) {
+				for (int ind = y * scene.width + x0; ind <= y * scene.width + x1; ind++) {
+					if (plane[ind] >= 0) {
+						histy[plane[ind]] += sign;
+					}
+				}
+			}
+		}
+	}
+
+	// Updates the clusters of one object and adds its detections, in the order of ObjectFinder.
+	private void detectObject(ObjectModel model, ObjectState state, List<Detection> detections) {
+		DetectionParams params = model.params;
+		int component = DecodedImage.component(params.conversion);
+		int[] imgGram = workspace.imgGrams[component];
+		System.arraycopy(sceneGrams[component], 0, imgGram, 0, imgGram.length);
+		DecodedImage.filter(imgGram, params.imageThreshold);
+		int[] objectGram = model.objectGram;
+		if (!finder.imageExist(imgGram, objectGram, params.existThreshold)) {
+			state.pool = null;
+			state.count = 0;
+			return;
+		}
+
+		if (state.nextPool == null) {
+			state.nextPool = new int[objectGram.length];
+		}
+		int[] pool = state.nextPool;
+		for (int bin = 0; bin < objectGram.length; bin++) {
+			pool[bin] = objectGram[bin] > 0 && imgGram[bin] > 0 ? 1 : 0;
+		}
+
+		// Label the whole frame when the pool changed, else only the regions around changed tiles.
+		List<int[]> regions;
+		if (state.pool == null || !Arrays.equals(pool, state.pool)) {
+			state.nextPool = state.pool;
+			state.pool = pool;
+			state.count = 0;
+			regions = new ArrayList<>();
+			regions.add(new int[] {0, 0, scene.width - 1, scene.height - 1});
+		} else {
+			regions = grow(state, params.clusterRange);
+			state.compact();
+		}
+
+		for (int[] region : regions) {
+			label(model, state, region);
+		}
+
+		// Clusters are reported in scan order of their first pixel, as a full labeling does.
+		if (order.length < state.count) {
+			order = new long[state.count];
+		}
+		int accepted = 0;
+		for (int k = 0; k < state.count; k++) {
+			if (state.detection[k] != null) {
+				order[accepted++] = ((long) state.first[k] << 32) | k;
+			}
+		}
+		Arrays.sort(order, 0, accepted);
+		for (int a = 0; a < accepted; a++) {
+			detections.add(state.detection[(int) order[a]]);
+		}
+	}
+
+	/**
+	 * Grows the changed tiles into regions that can be labeled on their own: regions
+	 * within cluster range of each other are merged, and every kept cluster within
+	 * range of a region is dropped and its bounding box added to the region.
+	 * @param state The clusters of the object.
+	 * @param range The cluster range of the object.
+	 * @return The regions to label.
+	 */
+	private List<int[]> grow(ObjectState state, int range) {
+		List<int[]> regions = new ArrayList<>();
+		for (int[] tile : dirty) {
+			regions.add(tile.clone());
+		}
+		boolean changed = !regions.isEmpty();
+		while (changed) {
+			changed = false;
+			for (int a = 0; a < regions.size(); a++) {
+				for (int b = regions.size() - 1; b > a; b--) {
+					int[] other = regions.get(b);
+					if (near(regions.get(a), other[0], other[1], other[2], other[3], range)) {
+						include(regions.get(a), other[0], other[1], other[2], other[3]);
+						regions.remove(b);
+						changed = true;
+					}
+				}
+			}
+			for (int k = 0; k < state.count; k++) {
+				if (state.first[k] < 0) {
+					continue;
+				}
+				for (int r = 0; r < regions.size(); r++) {
+					int[] region = regions.get(r);
+					if (near(region, state.minX[k], state.minY[k], state.maxX[k], state.maxY[k], range)) {
+						include(region, state.minX[k], state.minY[k], state.maxX[k], state.maxY[k]);
+						state.first[k] = -1;
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		return regions;
+	}
+
+	// Whether a rectangle has a pixel within cluster range of a region.
+	private static boolean near(int[] region, int x0, int y0, int x1, int y1, int range) {
+		return x0 <= region[2] + range && region[0] <= x1 + range && y0 <= region[3] + 1 && region[1] <= y1 + 1;
+	}
+
+	private static void include(int[] region, int x0, int y0, int x1, int y1) {
+		region[0] = Math.min(region[0], x0);
+		region[1] = Math.min(region[1], y0);
+		region[2] = Math.max(region[2], x1);
+		region[3] = Math.max(region[3], y1);
+	}
+
+	// Labels the candidates of an object inside a region and keeps the clusters found.
+	private void label(ObjectModel model, ObjectState state, int[] region) {
+		DetectionParams params = model.params;
+		int width = scene.width;
+		short[] plane = scene.plane(params.conversion);
+		byte[] island = workspace.island(width * scene.height);
+		for (int y = region[1]; y <= region[3]; y++) {
+			for (int p = y * width + region[0]; p <= y * width + region[2]; p++) {
+				int bin = plane[p];
+				island[p] = (byte) (bin >= 0 && state.pool[bin] > 0 ? 1 : 0);
+			}
+		}
+
+		ComponentLabeler labeler = workspace.labeler;
+		int clusterCount = labeler.label(island, width, scene.height, params.clusterRange,
+				region[0], region[1], region[2], region[3]);
+		PointStore clusters = labeler.members();
+		for (int y = region[1]; y <= region[3]; y++) {
+			Arrays.fill(island, y * width + region[0], y * width + region[2] + 1, (byte) 0);
+		}
+		timer.count("relabeled pixels", (long) (region[2] - region[0] + 1) * (region[3] - region[1] + 1));
+
+		for (int c = 0; c < clusterCount; c++) {
+			Detection accepted = null;
+			if (labeler.size(c) >= params.minClusterSize) {
+				int[] clusterHist = scene.histogram(params.conversion, clusters, c, params.clusterThreshold,
+						workspace.clusterGrams[DecodedImage.component(params.conversion)]);
+				double score = finder.matchScore(clusterHist, model);
+				if (score >= 0) {
+					accepted = new Detection(model.name, labeler.minX(c), labeler.minY(c), labeler.maxX(c),
+							labeler.maxY(c), labeler.size(c), score);
+				}
+			}
+			state.add(labeler.minX(c), labeler.minY(c), labeler.maxX(c), labeler.maxY(c),
+					clusters.points[clusters.start(c)], accepted);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+import java.util.Arrays;
+
+/**
+ * Finds the candidate pixels of many objects in one scan of the scene. Every
+ * histogram bin gets a bit mask of the objects whose pool includes it, so each
+ * pixel is looked up once per color component no matter how many objects are
+ * queried, and only the objects that match it are touched. The scan keeps its
+ * buffers, so scanning frames for the same objects allocates nothing.
+ */
+public class MultiObjectScan {
+
+	private final PointStore candidates = new PointStore(0);
+	private final long[][] binMasks = new long[DecodedImage.CONVERSIONS.length][]; // per color component, null if unused
+	private final long[][] maskBuffers = new long[DecodedImage.CONVERSIONS.length][]; // kept between scans
+	private int[] counts = new int[0];
+	private int[] next = new int[0];
+	private int[] minX = new int[0];
+	private int[] minY = new int[0];
+	private int[] maxX = new int[0];
+	private int[] maxY = new int[0];
+
+	/**
+	 * Collects the pixels of the scene whose bin is in the pool of each object.
+	 * @param scene The decoded scene.
+	 * @param conversions The color component of every object.
+	 * @param poolGrams The histogram of every object, restricted to bins also present in the scene;
+	 *                  null for objects that are not searched.
+	 * @return The number of objects.
+	 */
+	public int scan(DecodedImage scene, String[] conversions, int[][] poolGrams) {
+		int objects = conversions.length;
+		int width = scene.width;
+		if (counts.length != objects) {
+			counts = new int[objects];
+			next = new int[objects];
+			minX = new int[objects];
+			minY = new int[objects];
+			maxX = new int[objects];
+			maxY = new int[objects];
+		}
+		Arrays.fill(counts, 0);
+		Arrays.fill(minX, Integer.MAX_VALUE);
+		Arrays.fill(minY, Integer.MAX_VALUE);
+		Arrays.fill(maxX, -1);
+		Arrays.fill(maxY, -1);
+
+		// First pass: count the candidates of every object and their bounding boxes.
+		for (int c = 0; c < DecodedImage.CONVERSIONS.length; c++) {
+			String conversion = DecodedImage.CONVERSIONS[c];
+			long[] binMasks = binMasks(c, conversions, poolGrams);
+			if (binMasks == null) {
+				continue;
+			}
+			int words = binMasks.length / DecodedImage.bins(conversion);
+			short[] plane = scene.plane(conversion);
+			for (int y = 0; y < scene.height; y++) {
+				int row = y * width;
+				for (int x = 0; x < width; x++) {
+					int bin = plane[row + x];
+					if (bin < 0) {
+						continue;
+					}
+					for (int w = 0; w < words; w++) {
+						long m = binMasks[bin * words + w];
+						while (m != 0) {
+							int i = (w << 6) + Long.numberOfTrailingZeros(m);
+							m &= m - 1;
+							counts[i]++;
+							minX[i] = Math.min(minX[i], x);
+							maxX[i] = Math.max(maxX[i], x);
+							minY[i] = Math.min(minY[i], y);
+							maxY[i] = y;
+						}
+					}
+				}
+			}
+		}
+
+		// Second pass: scatter the pixels into one group per object, in scan order.
+		int total = 0;
+		for (int i = 0; i < objects; i++) {
+			total += counts[i];
+		}
+		candidates.reset(width, objects, total);
+		int[] start = candidates.groupStart;
+		for (int i = 0; i < objects; i++) {
+			start[i + 1] = start[i] + counts[i];
+		}
+		System.arraycopy(start, 0, next, 0, objects);
+		int[] points = candidates.points;
+		for (int c = 0; c < DecodedImage.CONVERSIONS.length; c++) {
+			String conversion = DecodedImage.CONVERSIONS[c];
+			long[] binMasks = this.binMasks[c];
+			if (binMasks == null) {
+				continue;
+			}
+			int words = binMasks.length / DecodedImage.bins(conversion);
+			short[] plane = scene.plane(conversion);
+			for (int p = 0; p < plane.length; p++) {
+				int bin = plane[p];
+				if (bin < 0) {
+					continue;
+				}
+				for (int w = 0; w < words; w++) {
+					long m = binMasks[bin * words + w];
+					while (m != 0) {
+						int i = (w << 6) + Long.numberOfTrailingZeros(m);
+						m &= m - 1;
+						points[next[i]++] = p;
+					}
+				}
+			}
+		}
+		return objects;
+	}
+
+	// Builds the per-bin object masks of one color component, null if no object uses it.
+	private long[] binMasks(int c, String[] conversions, int[][] poolGrams) {
+		String conversion = DecodedImage.CONVERSIONS[c];
+		int bins = DecodedImage.bins(conversion);
+		int words = (conversions.length + 63) >>> 6;
+		long[] binMasks = null;
+		for (int i = 0; i < conversions.length; i++) {
+			if (poolGrams[i] == null || !conversions[i].equals(conversion)) {
+				continue;
+			}
+			if (binMasks == null) {
+				binMasks = maskBuffers[c];
+				if (binMasks == null || binMasks.length != bins * words) {
+					binMasks = new long[bins * words];
+					maskBuffers[c] = binMasks;
+				} else {
+					Arrays.fill(binMasks, 0);
+				}
+			}
+			for (int bin = 0; bin < bins; bin++) {
+				if (poolGrams[i][bin] > 0) {
+					binMasks[bin * words + (i >>> 6)] |= 1L << (i & 63);
+				}
+			}
+		}
+		this.binMasks[c] = binMasks;
+		return binMasks;
+	}
+
+	/**
+	 * Returns the candidate pixels of every object, one group per object. The
+	 * store is reused by the next scan.
+	 * @return The candidate pixels.
+	 */
+	public PointStore candidates() {
+		return candidates;
+	}
+
+	// Bounding box of the candidates of an object; maxX is -1 when it has none.
+	public int minX(int i) {
+		return minX[i];
+	}
+
+	public int minY(int i) {
+		return minY[i];
+	}
+
+	public int maxX(int i) {
+		return maxX[i];
+	}
+
+	public int maxY(int i) {
+		return maxY[i];
+	}
+}
@@ -0,0 +1,506 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The detection pipeline without any display: reads and models objects, and
+ * finds the clusters of a decoded scene that match them. A finder holds no
+ * per-scene state, so one instance can serve many threads; the buffers each
+ * thread reuses are kept in a per-thread workspace.
+ */
+public class ObjectFinder {
+
+	// Thresholds of the joint u and v component.
+	static final int JOINT_IMAGE_THRESHOLD = 10;
+	static final int JOINT_OBJECT_THRESHOLD = 50;
+	static final double JOINT_EXIST_THRESHOLD = 0.80;
+	static final int JOINT_CLUSTER_THRESHOLD = 5;
+
+	// Side of the blocks candidates are counted in before labeling, in pixels.
+	static final int BLOCK = 8;
+
+	final FrameSize size; // size given on the command line, null to use sidecars or file lengths
+	private final ThreadLocal<DetectionWorkspace> workspaces = ThreadLocal.withInitial(DetectionWorkspace::new);
+	private volatile PipelineMetrics metrics = PipelineMetrics.NONE;
+	private volatile WindowDetector windows; // null to detect clusters
+	private volatile HistogramSimilarity similarity; // null for the ratio test of imageExist
+	private volatile double minSimilarity;
+	private volatile ProfileRegistry profiles = ProfileRegistry.defaults();
+	private volatile boolean jointColors; // whether objects read from images are searched in joint u and v
+	private volatile ForkJoinPool objectPool; // null to query the objects of a scene one after the other
+	private volatile int block = BLOCK; // 0 to label the whole bounding box of the candidates
+	private volatile double density; // share of the pixels of a block that must be candidates, 0 to keep every block
+
+	public ObjectFinder() {
+		this(null);
+	}
+
+	/**
+	 * @param size The size of every image file without a .size sidecar, or null to
+	 *             recognize it by the file length.
+	 */
+	public ObjectFinder(FrameSize size) {
+		this.size = size;
+	}
+
+	// Sets the receiver of the stage timings and counts, PipelineMetrics.NONE to measure nothing.
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public PipelineMetrics metrics() {
+		return metrics;
+	}
+
+	// Sets the sliding-window engine used instead of clusters, null to detect clusters.
+	public void setWindowDetector(WindowDetector windows) {
+		this.windows = windows;
+	}
+
+	public WindowDetector windowDetector() {
+		return windows;
+	}
+
+	/**
+	 * Sets the pool the objects of a scene are queried on. Each object found in the scene
+	 * histograms is then labeled and scored by its own task against the shared scene and
+	 * candidate scan, with the buffers of the thread running it.
+	 * @param objectPool The pool, or null to query the objects one after the other.
+	 */
+	public void setObjectPool(ForkJoinPool objectPool) {
+		this.objectPool = objectPool;
+	}
+
+	/**
+	 * Sets the side of the blocks the candidates of an object are counted in before they are
+	 * labeled. Regions of blocks too sparse to hold a cluster of the smallest size are skipped
+	 * and the others are labeled on their own, which gives the same detections. With a density,
+	 * blocks with a smaller share of candidates that are not next to a denser block are skipped
+	 * too, which leaves out scattered pixels and may trim the sparse edges of clusters.
+	 * @param block The side of the blocks in pixels, or 0 to label the whole bounding box of the candidates.
+	 * @param density The share of candidates of a kept block, or 0 to keep every block.
+	 */
+	public void setBlockPrefilter(int block, double density) {
+		this.density = density;
+		this.block = block;
+	}
+
+	public double prefilterDensity() {
+		return density;
+	}
+
+	// Sets the registry choosing the parameters of objects read from images.
+	public void setProfiles(ProfileRegistry profiles) {
+		this.profiles = profiles;
+	}
+
+	public ProfileRegistry profiles() {
+		return profiles;
+	}
+
+	/**
+	 * Sets whether objects read from images are searched in the joint u and v component
+	 * instead of the single component of their color case. Stored models keep their own.
+	 * @param jointColors True for the joint component.
+	 */
+	public void setJointColors(boolean jointColors) {
+		this.jointColors = jointColors;
+	}
+
+	/**
+	 * Sets how clusters and windows are compared with objects.
+	 * @param similarity The similarity of the histograms, or null for the ratio test of {@link #imageExist}.
+	 * @param minSimilarity The smallest similarity of an accepted cluster.
+	 */
+	public void setSimilarity(HistogramSimilarity similarity, double minSimilarity) {
+		this.minSimilarity = minSimilarity;
+		this.similarity = similarity;
+	}
+
+	/**
+	 * Reads the RGB values of an image file of the size resolved by {@link FrameSize#of}.
+	 * @param imgPath The file path of the image.
+	 * @return The planar frame of the image, or null if it cannot be read.
+	 */
+	public RgbFrame readImageRGB(String imgPath) {
+		try {
+			FrameSize frameSize = FrameSize.of(imgPath, size);
+			return RgbFrame.read(imgPath, frameSize.width, frameSize.height);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the RGB values of an image file, mapping the file into memory.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param imgPath The file path of the image.
+	 * @return The planar frame of the image, or null if it cannot be read.
+	 */
+	public RgbFrame readImageRGB(int width, int height, String imgPath) {
+		try {
+			return RgbFrame.read(imgPath, width, height);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Computes the histogram of a specific color component for an object, excluding its green background.
+	 * @param img The decoded object image.
+	 * @param imgName The color component identifier ("h" for hue, "v" for value, "u" for u component).
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @return The histogram of the specified color component for the object.
+	 */
+	private int[] histogramOfObject(DecodedImage img, String imgName, int threshold) {
+		return img.histogram(imgName, threshold, true);
+	}
+
+	/**
+	 * Computes the histogram of a specific color component for the entire image.
+	 * @param img The decoded image.
+	 * @param imgName The color component identifier ("h" for hue, "v" for value, "u" for u component).
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @param histy The array to overwrite with the histogram.
+	 * @return The histogram of the specified color component for the entire image.
+	 */
+	private int[] histogramOfImage(DecodedImage img, String imgName, int threshold, int[] histy) {
+		return img.histogram(imgName, threshold, false, histy);
+	}
+
+	/**
+	 * Computes the histogram of a specific color component for a cluster of pixels.
+	 * @param img The decoded image.
+	 * @param clusters The pixels of all clusters.
+	 * @param cluster The index of the cluster.
+	 * @param imgName The color component identifier ("h" for hue, "v" for value, "u" for u component).
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @param histy The array to overwrite with the histogram.
+	 * @return The histogram of the specified color component for the cluster.
+	 */
+	private int[] histogramOfCluster(DecodedImage img, PointStore clusters, int cluster, String imgName, int threshold,
+									 int[] histy) {
+		return img.histogram(imgName, clusters, cluster, threshold, histy);
+	}
+
+	/**
+	 * Checks if a significant number of colors in an object's histogram are present in the image's histogram.
+	 * @param imageHist The histogram of the entire image.
+	 * @param objectHist The histogram of the object.
+	 * @param threshold The threshold ratio for considering the existence of the object in the image.
+	 * @return True if the object is considered to exist in the image, false otherwise.
+	 */
+	boolean imageExist(int[] imageHist, int[] objectHist, double threshold) {
+		int objectColorCount = 0;
+		int imageColorCount = 0;
+
+		// Count the number of colors present in the object.
+		for (int i = 0; i < objectHist.length; i++) {
+			if (objectHist[i] > 0) {
+				objectColorCount++;
+				if (imageHist[i] > 0) {
+					imageColorCount++;
+				}
+			}
+		}
+
+		// Check if the ratio of object colors present in the image exceeds the threshold.
+		return imageColorCount >= (int) (objectColorCount * threshold);
+	}
+
+	/**
+	 * Compares the histogram of a cluster or window with an object, by the ratio test or the similarity set.
+	 * @param clusterHist The filtered histogram of the cluster or window.
+	 * @param model The object.
+	 * @return The score of the match, or -1 if it does not match.
+	 */
+	double matchScore(int[] clusterHist, ObjectModel model) {
+		HistogramSimilarity similarity = this.similarity;
+		if (similarity == null) {
+			return imageExist(clusterHist, model.objectGram, model.params.clusterExistThreshold)
+					? colorScore(clusterHist, model.objectGram) : -1;
+		}
+		double score = similarity.similarity(clusterHist, model.objectGram);
+		return score >= minSimilarity ? Math.max(score, 0) : -1;
+	}
+
+	/**
+	 * Computes the share of the colors in an object's histogram that are present in another histogram.
+	 * @param imageHist The histogram of the image or cluster.
+	 * @param objectHist The histogram of the object.
+	 * @return The share of object colors present, between 0 and 1.
+	 */
+	double colorScore(int[] imageHist, int[] objectHist) {
+		int objectColorCount = 0;
+		int imageColorCount = 0;
+		for (int i = 0; i < objectHist.length; i++) {
+			if (objectHist[i] > 0) {
+				objectColorCount++;
+				if (imageHist[i] > 0) {
+					imageColorCount++;
+				}
+			}
+		}
+		return objectColorCount == 0 ? 0 : imageColorCount / (double) objectColorCount;
+	}
+
+	// Detects the clusters of one object among its candidate pixels and keeps the ones that pass the thresholds.
+	// The scan is only read, so objects of the same scan can be detected at once with different workspaces.
+	private void colorDetection(ObjectModel model, int object, DecodedImage scene, MultiObjectScan scan,
+								DetectionWorkspace workspace, List<Detection> detections) {
+		DetectionParams params = model.params;
+		ComponentLabeler labeler = workspace.labeler;
+		StageTimer timer = workspace.timer;
+		PointStore candidates = scan.candidates();
+		if (scan.maxX(object) < 0) {
+			return;
+		}
+
+		// Locate the regions that can hold a cluster large enough, coarse to fine.
+		CandidatePyramid pyramid = workspace.pyramid;
+		int regions = pyramid.locate(scan, object, scene.width, scene.height, params, block, density);
+		int[] boxes = pyramid.boxes();
+		timer.lap("candidate pyramid");
+		timer.count("pruned candidates", pyramid.pruned());
+		timer.count("regions", regions);
+		if (regions == 0) {
+			return;
+		}
+
+		// Mark the candidate pixels of the object in the island matrix, leaving out the pruned blocks.
+		byte[] island = workspace.island(scene.width * scene.height);
+		for (int k = candidates.start(object); k < candidates.end(object); k++) {
+			int p = candidates.points[k];
+			if (pyramid.kept(p)) {
+				island[p] = 1;
+			}
+		}
+
+		// Find clusters in the island matrix, only inside the boxes of the regions, and keep the ones matching.
+		int base = detections.size();
+		int clusterCount = 0;
+		int accepted = 0;
+		long[] order = workspace.detectionOrder;
+		for (int r = 0; r < regions; r++) {
+			int found = labeler.label(island, scene.width, scene.height, params.clusterRange,
+					boxes[4 * r], boxes[4 * r + 1], boxes[4 * r + 2], boxes[4 * r + 3]);
+			PointStore clusters = labeler.members();
+			clusterCount += found;
+			timer.lap("labeling");
+
+			for (int c = 0; c < found; c++) {
+				if (labeler.size(c) < params.minClusterSize) {
+					continue;
+				}
+				int[] clusterHist = histogramOfCluster(scene, clusters, c, params.conversion, params.clusterThreshold,
+						workspace.clusterGrams[DecodedImage.component(params.conversion)]);
+				double score = matchScore(clusterHist, model);
+				if (score >= 0) {
+					if (order.length == accepted) {
+						order = Arrays.copyOf(order, Math.max(16, 2 * accepted));
+						workspace.detectionOrder = order;
+					}
+					order[accepted] = ((long) clusters.points[clusters.start(c)] << 32) | accepted;
+					detections.add(new Detection(model.name, labeler.minX(c), labeler.minY(c), labeler.maxX(c),
+							labeler.maxY(c), labeler.size(c), score));
+					accepted++;
+				}
+			}
+			timer.lap("cluster matching");
+		}
+		for (int k = candidates.start(object); k < candidates.end(object); k++) {
+			island[candidates.points[k]] = 0;
+		}
+		timer.count("clusters", clusterCount);
+		timer.count("rejected clusters", clusterCount - accepted);
+
+		// Clusters are reported in scan order of their first pixel, as a labeling of the whole box does.
+		if (regions > 1 && accepted > 1) {
+			Arrays.sort(order, 0, accepted);
+			Detection[] found = detections.subList(base, base + accepted).toArray(new Detection[0]);
+			for (int a = 0; a < accepted; a++) {
+				detections.set(base + a, found[(int) order[a]]);
+			}
+		}
+	}
+
+	// The labeling and scoring of one object of a scan, with the workspace of the thread running it.
+	private class ObjectQuery extends RecursiveTask<List<Detection>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient ObjectModel model;
+		private final int object;
+		private final transient DecodedImage scene;
+		private final transient MultiObjectScan scan;
+
+		ObjectQuery(ObjectModel model, int object, DecodedImage scene, MultiObjectScan scan) {
+			this.model = model;
+			this.object = object;
+			this.scene = scene;
+			this.scan = scan;
+		}
+
+		@Override
+		protected List<Detection> compute() {
+			// A query does not wait for other tasks, so a thread never runs two queries with its workspace at once.
+			DetectionWorkspace workspace = workspaces.get();
+			workspace.timer.start(metrics);
+			List<Detection> detections = new ArrayList<>();
+			colorDetection(model, object, scene, scan, workspace, detections);
+			return detections;
+		}
+	}
+
+	// Returns the workspace of the calling thread.
+	public DetectionWorkspace workspace() {
+		return workspaces.get();
+	}
+
+	/**
+	 * Detects every object in the scene with the workspace of the calling thread.
+	 * @param scene The decoded scene.
+	 * @param models The objects to look for.
+	 * @return The clusters found, in object order, as a list that cannot be modified.
+	 */
+	public List<Detection> detectObjects(DecodedImage scene, List<ObjectModel> models) {
+		return detectObjects(scene, models, workspaces.get());
+	}
+
+	/**
+	 * Detects every object in the scene. The scene histograms are computed once per color
+	 * component and a single scan collects the candidate pixels of all objects.
+	 * @param scene The decoded scene.
+	 * @param models The objects to look for.
+	 * @param workspace The buffers to use, not shared with any other thread during the call.
+	 * @return The clusters found, in object order, as a list that cannot be modified.
+	 */
+	public List<Detection> detectObjects(DecodedImage scene, List<ObjectModel> models, DetectionWorkspace workspace) {
+		WindowDetector windows = this.windows;
+		if (windows != null) {
+			return windows.detect(scene, models, workspace);
+		}
+		StageTimer timer = workspace.timer;
+		timer.start(metrics);
+		timer.count("scene pixels", (long) scene.width * scene.height);
+		int objects = models.size();
+		workspace.objects(objects);
+		String[] conversions = workspace.conversions;
+		int[][] poolGrams = workspace.poolGrams;
+		Arrays.fill(workspace.sceneCounted, false);
+
+		// Keep the objects whose colors are present in the scene, with the bins they are searched in.
+		for (int i = 0; i < objects; i++) {
+			DetectionParams params = models.get(i).params;
+			conversions[i] = params.conversion;
+			poolGrams[i] = null;
+			int component = DecodedImage.component(params.conversion);
+			if (!workspace.sceneCounted[component]) {
+				histogramOfImage(scene, params.conversion, 0, workspace.sceneGrams[component]);
+				workspace.sceneCounted[component] = true;
+			}
+			int[] imgGram = workspace.imgGrams[component];
+			System.arraycopy(workspace.sceneGrams[component], 0, imgGram, 0, imgGram.length);
+			DecodedImage.filter(imgGram, params.imageThreshold);
+			int[] objectGram = models.get(i).objectGram;
+			if (!imageExist(imgGram, objectGram, params.existThreshold)) {
+				timer.count("objects absent", 1);
+				continue;
+			}
+			int[] poolGram = workspace.poolBuffer(i, objectGram.length);
+			for (int bin = 0; bin < objectGram.length; bin++) {
+				poolGram[bin] = objectGram[bin] > 0 && imgGram[bin] > 0 ? 1 : 0;
+			}
+			poolGrams[i] = poolGram;
+		}
+		timer.lap("scene histograms");
+
+		workspace.scan.scan(scene, conversions, poolGrams);
+		timer.lap("candidate scan");
+		timer.count("candidates", workspace.scan.candidates().size);
+		List<Detection> detections = new ArrayList<>();
+		ForkJoinPool objectPool = this.objectPool;
+		if (objectPool == null) {
+			for (int i = 0; i < objects; i++) {
+				if (poolGrams[i] != null) {
+					colorDetection(models.get(i), i, scene, workspace.scan, workspace, detections);
+				}
+			}
+		} else {
+			// One task per object, merged in object order.
+			List<ForkJoinTask<List<Detection>>> queries = new ArrayList<>();
+			for (int i = 0; i < objects; i++) {
+				if (poolGrams[i] != null) {
+					queries.add(objectPool.submit(new ObjectQuery(models.get(i), i, scene, workspace.scan)));
+				}
+			}
+			for (ForkJoinTask<List<Detection>> query : queries) {
+				detections.addAll(query.join());
+			}
+		}
+		timer.count("detections", detections.size());
+		return Collections.unmodifiableList(detections);
+	}
+
+	/**
+	 * Reads an object image and builds its model, choosing the detection parameters
+	 * from the profile registry.
+	 * @param imgPath The file path of the object image.
+	 * @return The object model, or null if the image cannot be read.
+	 */
+	public ObjectModel loadObject(String imgPath) {
+		RgbFrame frame = readImageRGB(imgPath);
+		if (frame == null) {
+			return null;
+		}
+		DecodedImage object = DecodedImage.decode(frame);
+		int[] hueGram = histogramOfObject(object, "h", 0);
+		DetectionParams params = profiles.resolve(imgPath, hueGram);
+		if (jointColors) {
+			params = jointParams(params);
+		}
+		return new ObjectModel(imgPath, params, hueGram, histogramOfObject(object, "u", 0),
+				histogramOfObject(object, "v", 0),
+				SparseHistogram.of(histogramOfObject(object, "uv", 0)));
+	}
+
+	// Returns the parameters of the joint u and v component, keeping the cluster size and range of a color case.
+	// Joint bins are narrower than single component bins, so they hold fewer pixels and get lower thresholds.
+	private static DetectionParams jointParams(DetectionParams params) {
+		return new DetectionParams("uv", JOINT_IMAGE_THRESHOLD, JOINT_OBJECT_THRESHOLD, JOINT_EXIST_THRESHOLD,
+				JOINT_CLUSTER_THRESHOLD, JOINT_EXIST_THRESHOLD, params.minClusterSize, params.clusterRange);
+	}
+
+	/**
+	 * Reads the objects given on the command line. Object images are decoded and
+	 * classified, model stores (.model files) are read as they are.
+	 * @param args The object arguments.
+	 * @return The object models.
+	 */
+	public List<ObjectModel> loadObjects(String[] args) {
+		List<ObjectModel> models = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.endsWith(".model")) {
+				try {
+					models.addAll(ObjectModelStore.read(arg));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			} else {
+				ObjectModel model = loadObject(arg);
+				if (model != null) {
+					models.add(model);
+				}
+			}
+		}
+		return models;
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * An object to look for: its name, the parameters chosen for it and its
+ * histograms. The raw histograms of all color components are kept so the
+ * model can be stored once and reused with any thresholds; the joint u and v
+ * histogram is kept sparse, as an object fills few of its bins.
+ */
+public class ObjectModel {
+
+	final String name;
+	final DetectionParams params;
+	final int[] hueGram; // raw histograms, not filtered by any threshold
+	final int[] uGram;
+	final int[] vGram;
+	final SparseHistogram uvGram;
+	final int[] objectGram; // histogram of the chosen component, filtered by the object threshold
+
+	public ObjectModel(String name, DetectionParams params, int[] hueGram, int[] uGram, int[] vGram) {
+		this(name, params, hueGram, uGram, vGram, SparseHistogram.of(new int[DecodedImage.JOINT_BINS]));
+	}
+
+	public ObjectModel(String name, DetectionParams params, int[] hueGram, int[] uGram, int[] vGram,
+					   SparseHistogram uvGram) {
+		this.name = name;
+		this.params = params;
+		this.hueGram = hueGram;
+		this.uGram = uGram;
+		this.vGram = vGram;
+		this.uvGram = uvGram;
+		this.objectGram = rawGram(params.conversion).clone();
+		DecodedImage.filter(objectGram, params.objectThreshold);
+	}
+
+	/**
+	 * Returns the raw histogram of a color component.
+	 * @param conversion The color component identifier ("h" for hue, "v" for value, "u" for u component,
+	 *                   "uv" for joint u and v).
+	 * @return The histogram, not filtered by any threshold; a new array for the joint component.
+	 */
+	public int[] rawGram(String conversion) {
+		if (conversion.equals("h")) {
+			return hueGram;
+		} else if (conversion.equals("v")) {
+			return vGram;
+		} else if (conversion.equals("uv")) {
+			return uvGram.toDense();
+		} else {
+			return uGram;
+		}
+	}
+}
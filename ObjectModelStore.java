@@ -0,0 +1,198 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and writes object models in a compact binary file, so object images
+ * only have to be decoded and classified once for a whole object library.
+ *
+ * Layout (big endian): the magic "RGBM", a version int and the number of
+ * models, then per model its UTF-8 name (unsigned short length), its
+ * parameters and its hue, u, v and joint uv histograms. Histograms store their
+ * number of bins, the number of nonzero bins and a (bin, count) pair per
+ * nonzero bin. Version 1 stores have a one-character color component and no
+ * joint histogram; they are still read.
+ */
+public class ObjectModelStore {
+
+	static final int MAGIC = 0x5247424D; // "RGBM"
+	static final int VERSION = 2;
+
+	// Bytes of the parameters of a model after its color component, of a (bin, count) pair, and of the
+	// smallest model: empty name, one-character component and three empty histograms.
+	private static final int PARAMS_BYTES = 5 * 4 + 2 * 8;
+	private static final int BIN_BYTES = 2 + 4;
+	private static final int MIN_MODEL_BYTES = 2 + 1 + PARAMS_BYTES + 3 * 4;
+
+	/**
+	 * Writes object models to a file.
+	 * @param path The file path of the store.
+	 * @param models The models to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void write(String path, List<ObjectModel> models) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(models.size());
+			for (ObjectModel model : models) {
+				byte[] name = model.name.getBytes(StandardCharsets.UTF_8);
+				out.writeShort(name.length);
+				out.write(name);
+
+				DetectionParams params = model.params;
+				byte[] conversion = params.conversion.getBytes(StandardCharsets.US_ASCII);
+				out.writeByte(conversion.length);
+				out.write(conversion);
+				out.writeInt(params.imageThreshold);
+				out.writeInt(params.objectThreshold);
+				out.writeDouble(params.existThreshold);
+				out.writeInt(params.clusterThreshold);
+				out.writeDouble(params.clusterExistThreshold);
+				out.writeInt(params.minClusterSize);
+				out.writeInt(params.clusterRange);
+
+				writeHistogram(out, model.hueGram);
+				writeHistogram(out, model.uGram);
+				writeHistogram(out, model.vGram);
+				out.writeShort(model.uvGram.length);
+				out.writeShort(model.uvGram.size());
+				for (int k = 0; k < model.uvGram.size(); k++) {
+					out.writeShort(model.uvGram.bins[k]);
+					out.writeInt(model.uvGram.counts[k]);
+				}
+			}
+		}
+	}
+
+	private static void writeHistogram(DataOutputStream out, int[] histy) throws IOException {
+		int nonzero = 0;
+		for (int count : histy) {
+			if (count != 0) {
+				nonzero++;
+			}
+		}
+		out.writeShort(histy.length);
+		out.writeShort(nonzero);
+		for (int i = 0; i < histy.length; i++) {
+			if (histy[i] != 0) {
+				out.writeShort(i);
+				out.writeInt(histy[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads all object models of a file, mapping it into memory instead of copying it through streams.
+	 * @param path The file path of the store.
+	 * @return The models of the store.
+	 * @throws IOException If the file cannot be read, is not a store of this version, or is truncated or corrupt.
+	 */
+	public static List<ObjectModel> read(String path) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(path, "r");
+			 FileChannel channel = raf.getChannel()) {
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < 12 || in.getInt() != MAGIC) {
+				throw new IOException(path + " is not an object model store");
+			}
+			int version = in.getInt();
+			if (version != 1 && version != VERSION) {
+				throw new IOException(path + " has version " + version + ", expected 1 to " + VERSION);
+			}
+
+			int count = in.getInt();
+			if (count < 0 || count > in.remaining() / MIN_MODEL_BYTES) {
+				throw new IOException(path + " is corrupt: " + count + " models in " + in.remaining() + " bytes");
+			}
+			List<ObjectModel> models = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				require(in, 2, path);
+				byte[] name = new byte[in.getShort() & 0xFFFF];
+				require(in, name.length + 1, path);
+				in.get(name);
+
+				byte[] conversion = new byte[version == 1 ? 1 : in.get() & 0xFF];
+				require(in, conversion.length + PARAMS_BYTES, path);
+				in.get(conversion);
+				String component = new String(conversion, StandardCharsets.US_ASCII);
+				if (!Arrays.asList(DecodedImage.CONVERSIONS).contains(component)) {
+					throw new IOException(path + " is corrupt: unknown color component \"" + component + "\"");
+				}
+				DetectionParams params = new DetectionParams(component,
+						in.getInt(), in.getInt(), in.getDouble(), in.getInt(), in.getDouble(), in.getInt(), in.getInt());
+
+				int[] hueGram = readHistogram(in, DecodedImage.HUE_BINS, path);
+				int[] uGram = readHistogram(in, DecodedImage.UV_BINS, path);
+				int[] vGram = readHistogram(in, DecodedImage.UV_BINS, path);
+				String modelName = new String(name, StandardCharsets.UTF_8);
+				if (version == 1) {
+					models.add(new ObjectModel(modelName, params, hueGram, uGram, vGram));
+				} else {
+					models.add(new ObjectModel(modelName, params, hueGram, uGram, vGram,
+							readSparseHistogram(in, DecodedImage.JOINT_BINS, path)));
+				}
+			}
+			return models;
+		}
+	}
+
+	// Fails unless the buffer has at least the given number of bytes left.
+	private static void require(ByteBuffer in, int bytes, String path) throws IOException {
+		if (in.remaining() < bytes) {
+			throw new IOException(path + " is truncated at byte " + in.position());
+		}
+	}
+
+	// Reads the length and nonzero count of a histogram, checking them against the expected length and the file.
+	private static int readNonzero(ByteBuffer in, int length, String path) throws IOException {
+		require(in, 4, path);
+		int stored = in.getShort() & 0xFFFF;
+		if (stored != length) {
+			throw new IOException(path + " is corrupt: histogram of " + stored + " bins, expected " + length);
+		}
+		int nonzero = in.getShort() & 0xFFFF;
+		if (nonzero > length) {
+			throw new IOException(path + " is corrupt: " + nonzero + " nonzero bins of " + length);
+		}
+		require(in, nonzero * BIN_BYTES, path);
+		return nonzero;
+	}
+
+	// Reads a bin number, checking it against the length of the histogram.
+	private static int readBin(ByteBuffer in, int length, String path) throws IOException {
+		int bin = in.getShort() & 0xFFFF;
+		if (bin >= length) {
+			throw new IOException(path + " is corrupt: bin " + bin + " of a histogram of " + length + " bins");
+		}
+		return bin;
+	}
+
+	private static SparseHistogram readSparseHistogram(ByteBuffer in, int length, String path) throws IOException {
+		int nonzero = readNonzero(in, length, path);
+		int[] bins = new int[nonzero];
+		int[] counts = new int[nonzero];
+		for (int k = 0; k < nonzero; k++) {
+			bins[k] = readBin(in, length, path);
+			counts[k] = in.getInt();
+		}
+		return SparseHistogram.of(length, bins, counts);
+	}
+
+	private static int[] readHistogram(ByteBuffer in, int length, String path) throws IOException {
+		int nonzero = readNonzero(in, length, path);
+		int[] histy = new int[length];
+		for (int i = 0; i < nonzero; i++) {
+			int bin = readBin(in, length, path);
+			histy[bin] = in.getInt();
+		}
+		return histy;
+	}
+}
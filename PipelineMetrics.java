@@ -0,0 +1,34 @@
+/**
+ * Receives the measurements of the detection pipeline: the time and heap
+ * allocation of every stage, and counts such as scene pixels, candidates,
+ * clusters and rejected clusters. Implementations are called from every
+ * worker thread and must be thread-safe.
+ */
+public interface PipelineMetrics {
+
+	// Discards every measurement; the pipeline does not read any clock when it is used.
+	PipelineMetrics NONE = new PipelineMetrics() {
+		@Override
+		public void stage(String stage, long nanos, long bytes) {
+		}
+
+		@Override
+		public void count(String counter, long amount) {
+		}
+	};
+
+	/**
+	 * Records one run of a stage.
+	 * @param stage The name of the stage.
+	 * @param nanos The time the stage took, in nanoseconds.
+	 * @param bytes The heap bytes allocated by the calling thread during the stage, -1 if unknown.
+	 */
+	void stage(String stage, long nanos, long bytes);
+
+	/**
+	 * Adds to a counter.
+	 * @param counter The name of the counter.
+	 * @param amount The amount to add.
+	 */
+	void count(String counter, long amount);
+}
@@ -0,0 +1,181 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Aggregates the pipeline measurements in memory: calls, mean and maximum time,
+ * latency percentiles and allocation per stage, and the sum of every counter.
+ * The statistics can be watched over JMX while scenes are processed and dumped
+ * as text when a run ends.
+ */
+public class PipelineStats implements PipelineMetrics, PipelineStatsMBean {
+
+	// Latency buckets: bucket i holds times below 2^((i + 1) / 4) microseconds.
+	private static final int BUCKETS = 128;
+
+	private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final List<String> stageNames = new CopyOnWriteArrayList<>(); // in order of first report
+	private final List<String> counterNames = new CopyOnWriteArrayList<>();
+
+	private static class Stage {
+		final LongAdder calls = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+		final AtomicLong max = new AtomicLong();
+		final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	}
+
+	// Existing entries are looked up first, so steady reporting allocates nothing.
+	@Override
+	public void stage(String stage, long nanos, long bytes) {
+		Stage stat = stages.get(stage);
+		if (stat == null) {
+			stat = stages.computeIfAbsent(stage, s -> {
+				stageNames.add(s);
+				return new Stage();
+			});
+		}
+		stat.calls.increment();
+		stat.nanos.add(nanos);
+		stat.bytes.add(Math.max(0, bytes));
+		stat.max.accumulateAndGet(nanos, Math::max);
+		stat.buckets.incrementAndGet(bucket(nanos));
+	}
+
+	@Override
+	public void count(String counter, long amount) {
+		LongAdder sum = counters.get(counter);
+		if (sum == null) {
+			sum = counters.computeIfAbsent(counter, c -> {
+				counterNames.add(c);
+				return new LongAdder();
+			});
+		}
+		sum.add(amount);
+	}
+
+	private static int bucket(long nanos) {
+		double micros = nanos / 1e3;
+		return (int) Math.min(BUCKETS - 1, Math.max(0, 4 * (Math.log(1 + micros) / Math.log(2))));
+	}
+
+	/**
+	 * Registers the statistics with the platform MBean server.
+	 * @param name The name of the statistics, e.g. "batch".
+	 * @throws JMException If the name is taken or the bean cannot be registered.
+	 */
+	public void register(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName("RGBObjectFinder:type=PipelineStats,name=" + name));
+	}
+
+	@Override
+	public String[] getStageNames() {
+		return stageNames.toArray(new String[0]);
+	}
+
+	@Override
+	public String[] getCounterNames() {
+		return counterNames.toArray(new String[0]);
+	}
+
+	@Override
+	public long calls(String stage) {
+		Stage stat = stages.get(stage);
+		return stat == null ? 0 : stat.calls.sum();
+	}
+
+	@Override
+	public double meanMillis(String stage) {
+		Stage stat = stages.get(stage);
+		long calls = stat == null ? 0 : stat.calls.sum();
+		return calls == 0 ? 0 : stat.nanos.sum() / 1e6 / calls;
+	}
+
+	@Override
+	public double maxMillis(String stage) {
+		Stage stat = stages.get(stage);
+		return stat == null ? 0 : stat.max.get() / 1e6;
+	}
+
+	/**
+	 * Estimates a latency percentile of a stage from its buckets.
+	 * @param stage The name of the stage.
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The upper bound of the bucket holding the percentile, at most the maximum time.
+	 */
+	@Override
+	public double percentileMillis(String stage, double percentile) {
+		Stage stat = stages.get(stage);
+		if (stat == null) {
+			return 0;
+		}
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += stat.buckets.get(i);
+		}
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += stat.buckets.get(i);
+			if (seen >= rank && seen > 0) {
+				double upper = (Math.pow(2, (i + 1) / 4.0) - 1) / 1e3;
+				return Math.min(upper, maxMillis(stage));
+			}
+		}
+		return maxMillis(stage);
+	}
+
+	@Override
+	public long meanBytes(String stage) {
+		Stage stat = stages.get(stage);
+		long calls = stat == null ? 0 : stat.calls.sum();
+		return calls == 0 ? 0 : stat.bytes.sum() / calls;
+	}
+
+	@Override
+	public long counter(String counter) {
+		LongAdder sum = counters.get(counter);
+		return sum == null ? 0 : sum.sum();
+	}
+
+	/**
+	 * Formats the statistics as a table of stages followed by the counters.
+	 * @return The text dump.
+	 */
+	@Override
+	public String dump() {
+		StringWriter text = new StringWriter();
+		PrintWriter out = new PrintWriter(text);
+		out.printf("%-20s %8s %10s %10s %10s %10s %12s%n", "stage", "calls", "mean ms", "p50 ms", "p99 ms", "max ms",
+				"B/call");
+		for (String stage : stageNames) {
+			out.printf("%-20s %8d %10.3f %10.3f %10.3f %10.3f %12d%n", stage, calls(stage), meanMillis(stage),
+					percentileMillis(stage, 50), percentileMillis(stage, 99), maxMillis(stage), meanBytes(stage));
+		}
+		for (String counter : counterNames) {
+			out.printf("%-20s %8d%n", counter, counter(counter));
+		}
+		out.flush();
+		return text.toString();
+	}
+
+	// Forgets every measurement; reports made during the reset may be lost.
+	@Override
+	public void reset() {
+		stages.clear();
+		counters.clear();
+		stageNames.clear();
+		counterNames.clear();
+	}
+}
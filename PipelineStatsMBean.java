@@ -0,0 +1,26 @@
+/**
+ * The management interface of {@link PipelineStats}, as seen in JConsole or
+ * any other JMX client.
+ */
+public interface PipelineStatsMBean {
+
+	String[] getStageNames();
+
+	String[] getCounterNames();
+
+	long calls(String stage);
+
+	double meanMillis(String stage);
+
+	double maxMillis(String stage);
+
+	double percentileMillis(String stage, double percentile);
+
+	long meanBytes(String stage);
+
+	long counter(String counter);
+
+	String dump();
+
+	void reset();
+}
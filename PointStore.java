@@ -0,0 +1,141 @@
+import java.util.Arrays;
+
+/**
+ * Groups of pixels stored as packed y * width + x offsets in one int array,
+ * with the start offset of every group in a second array (CSR layout). Used
+ * for the image points of every histogram bin and for the pixels of every
+ * cluster, so no per-pixel objects are allocated.
+ */
+public class PointStore {
+
+	int width;
+	int[] points;
+	int[] groupStart; // group g spans points[groupStart[g]] to points[groupStart[g + 1] - 1]
+	int groups;
+	int size;
+
+	/**
+	 * Creates an empty store to be filled with {@link #add(int)} and {@link #endGroup()}.
+	 * @param width The width of the image the offsets refer to.
+	 */
+	public PointStore(int width) {
+		this.width = width;
+		this.points = new int[1024];
+		this.groupStart = new int[64];
+	}
+
+	private PointStore(int width, int[] points, int[] groupStart, int groups) {
+		this.width = width;
+		this.points = points;
+		this.groupStart = groupStart;
+		this.groups = groups;
+		this.size = groupStart[groups];
+	}
+
+	/**
+	 * Buckets the pixels of an image by the bin of a color component, keeping only
+	 * the bins present in the histogram.
+	 * @param img The decoded image.
+	 * @param conversion The color component identifier ("h" for hue, "v" for value, "u" for u component).
+	 * @param imgGram The histogram of the specified color component in the image.
+	 * @return The points of the image, one group per histogram bin.
+	 */
+	public static PointStore byBin(DecodedImage img, String conversion, int[] imgGram) {
+		short[] plane = img.plane(conversion);
+		int bins = imgGram.length;
+		int[] groupStart = new int[bins + 1];
+
+		// Count the pixels of every bin, then turn the counts into start offsets.
+		for (int i = 0; i < plane.length; i++) {
+			int bin = plane[i];
+			if (bin >= 0 && imgGram[bin] != 0) {
+				groupStart[bin + 1]++;
+			}
+		}
+		for (int i = 0; i < bins; i++) {
+			groupStart[i + 1] += groupStart[i];
+		}
+
+		// Scatter the offsets into their bins, in scan order.
+		int[] points = new int[groupStart[bins]];
+		int[] next = Arrays.copyOf(groupStart, bins);
+		for (int i = 0; i < plane.length; i++) {
+			int bin = plane[i];
+			if (bin >= 0 && imgGram[bin] != 0) {
+				points[next[bin]++] = i;
+			}
+		}
+
+		return new PointStore(img.width, points, groupStart, bins);
+	}
+
+	/**
+	 * Empties the store and sizes it for a number of groups and points that the
+	 * caller writes directly into {@link #groupStart} and {@link #points}.
+	 * @param width The width of the image the offsets refer to.
+	 * @param groups The number of groups.
+	 * @param size The number of points.
+	 */
+	void reset(int width, int groups, int size) {
+		this.width = width;
+		// Grow by at least half, so stores refilled with slowly growing sizes settle quickly.
+		if (points.length < size) {
+			points = new int[Math.max(size, points.length + points.length / 2)];
+		}
+		if (groupStart.length < groups + 1) {
+			groupStart = new int[Math.max(groups + 1, groupStart.length + groupStart.length / 2)];
+		}
+		Arrays.fill(groupStart, 0, groups + 1, 0);
+		this.groups = groups;
+		this.size = size;
+	}
+
+	/**
+	 * Appends a point to the group being built.
+	 * @param point The packed offset of the pixel.
+	 */
+	public void add(int point) {
+		if (size == points.length) {
+			points = Arrays.copyOf(points, points.length * 2);
+		}
+		points[size++] = point;
+	}
+
+	/**
+	 * Closes the group being built and starts a new one.
+	 */
+	public void endGroup() {
+		if (groups + 2 > groupStart.length) {
+			groupStart = Arrays.copyOf(groupStart, groupStart.length * 2);
+		}
+		groups++;
+		groupStart[groups] = size;
+	}
+
+	/**
+	 * Drops the points added since the last closed group.
+	 */
+	public void discardGroup() {
+		size = groupStart[groups];
+	}
+
+	// Returns the number of closed groups.
+	public int groups() {
+		return groups;
+	}
+
+	// Returns the index of the first point of a group.
+	public int start(int group) {
+		return groupStart[group];
+	}
+
+	// Returns the index after the last point of a group.
+	public int end(int group) {
+		return groupStart[group + 1];
+	}
+
+	// Returns the number of points of a group.
+	public int size(int group) {
+		return groupStart[group + 1] - groupStart[group];
+	}
+}
@@ -0,0 +1,255 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the detection parameters of an object read from an image. Named
+ * profiles of parameters are assigned to objects by file name, by the
+ * signature of their hue histogram, or by the color case the hue histogram
+ * falls in. The table is read from properties files:
+ *
+ * <pre>
+ * profile.NAME = CONVERSION IMAGE_THRESHOLD OBJECT_THRESHOLD EXIST_THRESHOLD CLUSTER_THRESHOLD
+ *                CLUSTER_EXIST_THRESHOLD MIN_CLUSTER_SIZE CLUSTER_RANGE
+ * object.FILE_NAME = NAME
+ * signature.HEX = NAME
+ * case.CASE = NAME
+ * default = NAME
+ * </pre>
+ *
+ * where every NAME may also be written out as the eight parameters. The
+ * built-in table holds the parameters tuned for the sample objects, and files
+ * loaded on top of it add entries or replace them. An object is resolved by
+ * file name, then by signature, then by color case, then by default; the
+ * color case of a signature is worked out once and cached.
+ */
+public class ProfileRegistry {
+
+	// The built-in table, in the syntax of a properties file.
+	static final String DEFAULTS = String.join("\n",
+			"profile.kirby = h 10 200 0.90 10 0.90 300 1",
+			"profile.oswald = h 10 200 0.95 10 0.95 300 1",
+			"profile.pikachu = h 200 250 0.80 100 0.70 300 1",
+			"profile.volleyball = h 600 400 0.25 10 0.25 200 1",
+			"profile.strawberry = v 100 600 0.45 10 0.45 300 1",
+			"profile.rose = v 100 300 0.80 50 0.80 300 1",
+			"profile.red = v 100 300 0.75 10 0.75 300 10",
+			"object.Kirby_object.rgb = kirby",
+			"object.warning_object.rgb = kirby",
+			"object.Oswald_object.rgb = oswald",
+			"object.pikachu_object.rgb = pikachu",
+			"object.Volleyball_object.rgb = volleyball",
+			"object.strawberry_object.rgb = strawberry",
+			"object.rose_object.rgb = rose",
+			"object.USC_object.rgb = red",
+			"object.Apple_object.rgb = red",
+			"case.Kirby = kirby",
+			"case.Warning = kirby",
+			"case.Oswald = oswald",
+			"case.Pikachu = pikachu",
+			"case.Volleyball = volleyball",
+			"case.Strawberry = strawberry",
+			"case.Rose = rose",
+			"case.Logo = red",
+			"case.Apple = red",
+			"case.Red = red",
+			"default = kirby");
+
+	// Filtering of the hue histogram the color case is determined from.
+	static final int CASE_THRESHOLD = 10;
+
+	private final Properties entries = new Properties();
+	private final Map<String, DetectionParams> byObject = new HashMap<>();
+	private final Map<Long, DetectionParams> bySignature = new HashMap<>();
+	private final Map<String, DetectionParams> byCase = new HashMap<>();
+	private DetectionParams fallback;
+	private final Map<Long, DetectionParams> resolved = new ConcurrentHashMap<>(); // color cases worked out
+
+	/**
+	 * Returns a registry holding the built-in table.
+	 * @return The registry.
+	 */
+	public static ProfileRegistry defaults() {
+		ProfileRegistry registry = new ProfileRegistry();
+		try {
+			registry.load(new StringReader(DEFAULTS));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return registry;
+	}
+
+	/**
+	 * Loads a properties file on top of the entries already held. Files are loaded before
+	 * objects are resolved, not while other threads resolve them.
+	 * @param path The file path of the properties file.
+	 * @throws IOException If the file cannot be read.
+	 * @throws IllegalArgumentException If an entry is malformed or names a missing profile.
+	 */
+	public void load(String path) throws IOException {
+		try (Reader in = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+			load(in);
+		}
+	}
+
+	private synchronized void load(Reader in) throws IOException {
+		entries.load(in);
+		byObject.clear();
+		bySignature.clear();
+		byCase.clear();
+		resolved.clear();
+		fallback = null;
+		for (String key : entries.stringPropertyNames()) {
+			if (key.startsWith("object.")) {
+				byObject.put(key.substring("object.".length()), params(key));
+			} else if (key.startsWith("signature.")) {
+				try {
+					bySignature.put(Long.parseUnsignedLong(key.substring("signature.".length()), 16), params(key));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException(key + " is not a hexadecimal signature");
+				}
+			} else if (key.startsWith("case.")) {
+				byCase.put(key.substring("case.".length()), params(key));
+			} else if (key.equals("default")) {
+				fallback = params(key);
+			} else if (key.startsWith("profile.")) {
+				params(key);
+			} else {
+				throw new IllegalArgumentException("unknown profile entry " + key);
+			}
+		}
+		if (fallback == null) {
+			throw new IllegalArgumentException("no default profile");
+		}
+	}
+
+	// Parses the parameters of an entry, following a profile name to its entry.
+	private DetectionParams params(String key) {
+		String[] fields = entries.getProperty(key).trim().split("\\s+");
+		if (fields.length == 1 && !key.startsWith("profile.")) {
+			if (entries.getProperty("profile." + fields[0]) == null) {
+				throw new IllegalArgumentException(key + " names the missing profile " + fields[0]);
+			}
+			return params("profile." + fields[0]);
+		}
+		if (fields.length != 8) {
+			throw new IllegalArgumentException(key + " must hold a profile name or 8 parameters");
+		}
+		if (!fields[0].equals("h") && !fields[0].equals("u") && !fields[0].equals("v") && !fields[0].equals("uv")) {
+			throw new IllegalArgumentException(key + " has the unknown color component " + fields[0]);
+		}
+		try {
+			return new DetectionParams(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+					Double.parseDouble(fields[3]), Integer.parseInt(fields[4]), Double.parseDouble(fields[5]),
+					Integer.parseInt(fields[6]), Integer.parseInt(fields[7]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(key + " has a malformed parameter: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Chooses the parameters of an object.
+	 * @param path The file path of the object image.
+	 * @param hueGram The raw hue histogram of the object, without its background.
+	 * @return The parameters.
+	 */
+	public DetectionParams resolve(String path, int[] hueGram) {
+		DetectionParams params = byObject.get(new File(path).getName());
+		if (params != null) {
+			return params;
+		}
+		long signature = signature(hueGram);
+		params = bySignature.get(signature);
+		if (params != null) {
+			return params;
+		}
+		return resolved.computeIfAbsent(signature, s -> {
+			int[] startingGram = hueGram.clone();
+			DecodedImage.filter(startingGram, CASE_THRESHOLD);
+			return byCase.getOrDefault(colorDeterminer(startingGram), fallback);
+		});
+	}
+
+	/**
+	 * Computes the signature of a histogram, a 64-bit FNV-1a hash of its counts.
+	 * @param histy The histogram.
+	 * @return The signature, written in hexadecimal in signature entries.
+	 */
+	public static long signature(int[] histy) {
+		long hash = 0xcbf29ce484222325L;
+		for (int count : histy) {
+			hash = (hash ^ count) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	// Determines the dominant color based on histogram values.
+	static String colorDeterminer(int[] histy) {
+		int totalPixels = 0;
+		for (int i = 0; i < 361; i++) {
+			totalPixels = totalPixels + histy[i];
+		}
+
+		// Count pixels in different color ranges.
+		int pinkPixels = countPixelsInRange(histy, 0, 18) + countPixelsInRange(histy, 90, 121)
+				+ countPixelsInRange(histy, 210, 236) + countPixelsInRange(histy, 308, 361);
+
+		int pikaPixels = countPixelsInRange(histy, 0, 120);
+		int warningPixels = countPixelsInRange(histy, 51, 113);
+		int oswaldPixels = countPixelsInRange(histy, 119, 241);
+		int volleyPixel = countPixelsInRange(histy, 6, 56) + countPixelsInRange(histy, 111, 129)
+				+ countPixelsInRange(histy, 210, 258);
+		int strawPixel = countPixelsInRange(histy, 0, 128) + countPixelsInRange(histy, 346, 361);
+		int rosePixel = countPixelsInRange(histy, 0, 111) + countPixelsInRange(histy, 351, 361);
+		int applePixel = countPixelsInRange(histy, 0, 109);
+		int logoPixel = countPixelsInRange(histy, 0, 113) + countPixelsInRange(histy, 343, 361);
+
+		int redCount = countPixelsInRange(histy, 0, 30) + countPixelsInRange(histy, 345, 361);
+
+		// Determine color based on pixel count ratios.
+		if (((double) redCount / totalPixels) >= 0.68) {
+			if (((double) applePixel / totalPixels) >= 0.90) {
+				return "Apple";
+			} else if (((double) rosePixel / totalPixels) >= 0.995) {
+				return "Rose";
+			} else if (((double) logoPixel / totalPixels) >= 0.98) {
+				return "Logo";
+			} else if (((double) strawPixel / totalPixels) >= 0.90) {
+				return "Strawberry";
+			} else {
+				return "Red";
+			}
+		} else {
+			if (((double) oswaldPixels / totalPixels) >= 0.90) {
+				return "Oswald";
+			} else if (((double) pikaPixels / totalPixels) >= 0.98) {
+				return "Pikachu";
+			} else if (((double) warningPixels / totalPixels) >= 0.90) {
+				return "Warning";
+			} else if (((double) pinkPixels / totalPixels) >= 0.95) {
+				return "Kirby";
+			} else if (((double) volleyPixel / totalPixels) >= 0.95) {
+				return "Volleyball";
+			} else {
+				return "Hue";
+			}
+		}
+	}
+
+	// Counts the pixels of a histogram in the bins from start (inclusive) to end (exclusive).
+	private static int countPixelsInRange(int[] histy, int start, int end) {
+		int count = 0;
+		for (int i = start; i < end; i++) {
+			count = count + histy[i];
+		}
+		return count;
+	}
+}
@@ -0,0 +1,174 @@
+import java.util.Arrays;
+
+/**
+ * A per-tile cumulative histogram of one color component of a decoded image:
+ * for every tile corner it holds the histogram of all pixels above and to the
+ * left of it. The histogram of any rectangle is then the sum of four corner
+ * histograms for the tiles it covers entirely, plus a direct count of the
+ * pixels of the partly covered tiles along its border, so the cost of a query
+ * depends on the number of bins and on the perimeter of the rectangle, not on
+ * its area. The index is built once per scene with a single pass over the
+ * plane and can be rebuilt for the next scene of the same size without
+ * allocating.
+ */
+public class RegionHistogramIndex {
+
+	// Default side of the square tiles, in pixels.
+	static final int TILE = 32;
+
+	private final String conversion;
+	private final boolean skipKey;
+	private final int tile;
+	private final int bins;
+	private DecodedImage img;
+	private int tilesX;
+	private int tilesY;
+	private int[] cumulative = new int[0]; // (tilesY + 1) x (tilesX + 1) corners of bins counts each
+
+	/**
+	 * @param conversion The color component identifier ("h" for hue, "v" for value, "u" for u component).
+	 * @param skipKey Whether to skip the green background of object images.
+	 */
+	public RegionHistogramIndex(String conversion, boolean skipKey) {
+		this(conversion, skipKey, TILE);
+	}
+
+	/**
+	 * @param conversion The color component identifier.
+	 * @param skipKey Whether to skip the green background of object images.
+	 * @param tile The side of the tiles; smaller tiles make queries cheaper and the index larger.
+	 */
+	public RegionHistogramIndex(String conversion, boolean skipKey, int tile) {
+		this.conversion = conversion;
+		this.skipKey = skipKey;
+		this.tile = tile;
+		this.bins = DecodedImage.bins(conversion);
+	}
+
+	/**
+	 * Indexes an image, replacing the previous one.
+	 * @param img The decoded image.
+	 * @return This index.
+	 */
+	public RegionHistogramIndex build(DecodedImage img) {
+		this.img = img;
+		tilesX = (img.width + tile - 1) / tile;
+		tilesY = (img.height + tile - 1) / tile;
+		int corners = (tilesX + 1) * (tilesY + 1) * bins;
+		if (cumulative.length != corners) {
+			cumulative = new int[corners];
+		} else {
+			Arrays.fill(cumulative, 0);
+		}
+
+		// Count every tile into the corner below and to the right of it.
+		short[] plane = img.plane(conversion);
+		int stride = (tilesX + 1) * bins;
+		for (int y = 0; y < img.height; y++) {
+			int cornerRow = (y / tile + 1) * stride;
+			for (int tx = 0; tx < tilesX; tx++) {
+				int corner = cornerRow + (tx + 1) * bins;
+				int to = y * img.width + Math.min((tx + 1) * tile, img.width);
+				for (int p = y * img.width + tx * tile; p < to; p++) {
+					int bin = plane[p];
+					if (bin < 0 || (skipKey && (img.mask[p] & DecodedImage.KEY) != 0)) {
+						continue;
+					}
+					cumulative[corner + bin]++;
+				}
+			}
+		}
+
+		// Sum the tile counts into corner histograms.
+		for (int gy = 1; gy <= tilesY; gy++) {
+			for (int gx = 1; gx <= tilesX; gx++) {
+				int corner = gy * stride + gx * bins;
+				int up = corner - stride;
+				int left = corner - bins;
+				int upLeft = up - bins;
+				for (int bin = 0; bin < bins; bin++) {
+					cumulative[corner + bin] += cumulative[up + bin] + cumulative[left + bin] - cumulative[upLeft + bin];
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Computes the histogram of a rectangle of the indexed image.
+	 * @param x0 The first column of the rectangle.
+	 * @param y0 The first row of the rectangle.
+	 * @param x1 The last column of the rectangle.
+	 * @param y1 The last row of the rectangle.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @return The histogram of the rectangle.
+	 */
+	public int[] histogram(int x0, int y0, int x1, int y1, int threshold) {
+		return histogram(x0, y0, x1, y1, threshold, new int[bins]);
+	}
+
+	/**
+	 * Computes the histogram of a rectangle of the indexed image into an existing array.
+	 * @param x0 The first column of the rectangle.
+	 * @param y0 The first row of the rectangle.
+	 * @param x1 The last column of the rectangle.
+	 * @param y1 The last row of the rectangle.
+	 * @param threshold The threshold for filtering low occurrences in the histogram.
+	 * @param histy The array to overwrite, of the number of bins of the component.
+	 * @return The histogram array.
+	 */
+	public int[] histogram(int x0, int y0, int x1, int y1, int threshold, int[] histy) {
+		Arrays.fill(histy, 0);
+
+		// Tiles covered entirely, as corner indices gx0..gx1 and gy0..gy1.
+		int gx0 = (x0 + tile - 1) / tile;
+		int gy0 = (y0 + tile - 1) / tile;
+		int gx1 = x1 + 1 == img.width ? tilesX : (x1 + 1) / tile;
+		int gy1 = y1 + 1 == img.height ? tilesY : (y1 + 1) / tile;
+		int innerX0 = x1 + 1;
+		int innerX1 = x1 + 1;
+		int innerY0 = y1 + 1;
+		int innerY1 = y1 + 1;
+		if (gx0 < gx1 && gy0 < gy1) {
+			int stride = (tilesX + 1) * bins;
+			int bottomRight = gy1 * stride + gx1 * bins;
+			int topRight = gy0 * stride + gx1 * bins;
+			int bottomLeft = gy1 * stride + gx0 * bins;
+			int topLeft = gy0 * stride + gx0 * bins;
+			for (int bin = 0; bin < bins; bin++) {
+				histy[bin] = cumulative[bottomRight + bin] - cumulative[topRight + bin] - cumulative[bottomLeft + bin]
+						+ cumulative[topLeft + bin];
+			}
+			innerX0 = gx0 * tile;
+			innerX1 = Math.min(gx1 * tile, img.width);
+			innerY0 = gy0 * tile;
+			innerY1 = Math.min(gy1 * tile, img.height);
+		}
+
+		// Count the pixels around the covered tiles directly.
+		for (int y = y0; y <= y1; y++) {
+			if (y >= innerY0 && y < innerY1) {
+				count(y, x0, innerX0 - 1, histy);
+				count(y, innerX1, x1, histy);
+			} else {
+				count(y, x0, x1, histy);
+			}
+		}
+
+		DecodedImage.filter(histy, threshold);
+		return histy;
+	}
+
+	// Adds the pixels of a row from column x0 to x1 (inclusive) to a histogram.
+	private void count(int y, int x0, int x1, int[] histy) {
+		short[] plane = img.plane(conversion);
+		byte[] mask = img.mask;
+		for (int p = y * img.width + x0; p <= y * img.width + x1; p++) {
+			int bin = plane[p];
+			if (bin < 0 || (skipKey && (mask[p] & DecodedImage.KEY) != 0)) {
+				continue;
+			}
+			histy[bin]++;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A raw planar RGB frame: all red bytes, then all green bytes, then all blue
+ * bytes, each plane in row order. Files are memory-mapped and read in place;
+ * a BufferedImage is only built when the frame has to be displayed.
+ */
+public class RgbFrame {
+
+	final int width;
+	final int height;
+	final ByteBuffer data; // the three planes, starting at index 0
+
+	public RgbFrame(int width, int height, ByteBuffer data) {
+		this.width = width;
+		this.height = height;
+		this.data = data;
+	}
+
+	/**
+	 * Maps a planar RGB file into memory.
+	 * @param imgPath The file path of the image.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @return The frame, backed by the mapped file.
+	 * @throws IOException If the file cannot be read or is shorter than one frame.
+	 */
+	public static RgbFrame read(String imgPath, int width, int height) throws IOException {
+		long frameLength = (long) width * height * 3;
+		try (RandomAccessFile raf = new RandomAccessFile(imgPath, "r");
+			 FileChannel channel = raf.getChannel()) {
+			if (channel.size() < frameLength) {
+				throw new IOException(imgPath + " has " + channel.size() + " bytes, expected " + frameLength
+						+ " for a " + width + "x" + height + " image");
+			}
+			return new RgbFrame(width, height, channel.map(FileChannel.MapMode.READ_ONLY, 0, frameLength));
+		}
+	}
+
+	// Returns the red value of the pixel at a y * width + x offset.
+	public int red(int ind) {
+		return data.get(ind) & 0xFF;
+	}
+
+	public int green(int ind) {
+		return data.get(ind + width * height) & 0xFF;
+	}
+
+	public int blue(int ind) {
+		return data.get(ind + 2 * width * height) & 0xFF;
+	}
+
+	/**
+	 * Builds a displayable image of the frame, writing its pixel array directly.
+	 * @return The image.
+	 */
+	public BufferedImage toBufferedImage() {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+		int size = width * height;
+		for (int ind = 0; ind < size; ind++) {
+			pixels[ind] = 0xff000000 | (red(ind) << 16) | (green(ind) << 8) | blue(ind);
+		}
+		return img;
+	}
+}
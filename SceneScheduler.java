@@ -0,0 +1,95 @@
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes scenes on a fixed pool of worker threads. At most workers + queue
+ * scenes are in flight at a time, so a long scene list never piles up decoded
+ * scenes in memory, and results are handed back in input order.
+ */
+public class SceneScheduler implements AutoCloseable {
+
+	/**
+	 * The work done for one scene on a worker thread.
+	 */
+	public interface SceneTask {
+		List<Detection> detect(String scene) throws Exception;
+	}
+
+	/**
+	 * Receives the results on the thread that called {@link #process}, in input order.
+	 */
+	public interface Listener {
+		void done(String scene, List<Detection> detections);
+
+		void failed(String scene, Throwable cause);
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final int inFlight;
+
+	/**
+	 * @param workers The number of worker threads.
+	 * @param queue The number of scenes that may wait for a free worker.
+	 */
+	public SceneScheduler(int workers, int queue) {
+		AtomicInteger count = new AtomicInteger();
+		// The queue is bounded by process(), which never has more than workers + queue scenes
+		// submitted; a bounded executor queue could still reject a scene submitted right after
+		// the oldest one completed but before its worker went back to the queue.
+		this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(), r -> {
+					Thread thread = new Thread(r, "scene-worker-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.inFlight = workers + queue;
+	}
+
+	/**
+	 * Runs a task for every scene and reports the results in input order.
+	 * @param scenes The scenes to process.
+	 * @param task The work for one scene; a null result counts as a failure.
+	 * @param listener The receiver of the results.
+	 * @throws InterruptedException If the calling thread is interrupted while waiting.
+	 */
+	public void process(List<String> scenes, SceneTask task, Listener listener) throws InterruptedException {
+		ArrayDeque<String> names = new ArrayDeque<>();
+		ArrayDeque<Future<List<Detection>>> pending = new ArrayDeque<>();
+		for (String scene : scenes) {
+			// Wait for the oldest scene before the queue would overflow.
+			if (pending.size() == inFlight) {
+				report(names.poll(), pending.poll(), listener);
+			}
+			names.add(scene);
+			pending.add(executor.submit(() -> task.detect(scene)));
+		}
+		while (!pending.isEmpty()) {
+			report(names.poll(), pending.poll(), listener);
+		}
+	}
+
+	private static void report(String scene, Future<List<Detection>> result, Listener listener)
+			throws InterruptedException {
+		try {
+			List<Detection> detections = result.get();
+			if (detections == null) {
+				listener.failed(scene, null);
+			} else {
+				listener.done(scene, detections);
+			}
+		} catch (ExecutionException e) {
+			listener.failed(scene, e.getCause());
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
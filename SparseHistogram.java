@@ -0,0 +1,70 @@
+/**
+ * A histogram holding only its nonzero bins, as sorted bin indices with their
+ * counts in two parallel primitive arrays. Joint histograms have thousands of
+ * bins of which an object fills a few dozen, so models keep them in this form
+ * and expand them only when they are compared.
+ */
+public class SparseHistogram {
+
+	final int length; // number of bins of the dense histogram
+	final int[] bins; // nonzero bins, ascending
+	final int[] counts;
+
+	private SparseHistogram(int length, int[] bins, int[] counts) {
+		this.length = length;
+		this.bins = bins;
+		this.counts = counts;
+	}
+
+	/**
+	 * Builds a sparse histogram from the pairs of its nonzero bins.
+	 * @param length The number of bins of the dense histogram.
+	 * @param bins The nonzero bins, ascending.
+	 * @param counts The count of every nonzero bin.
+	 * @return The sparse histogram, holding the arrays given.
+	 */
+	public static SparseHistogram of(int length, int[] bins, int[] counts) {
+		return new SparseHistogram(length, bins, counts);
+	}
+
+	/**
+	 * Keeps the nonzero bins of a dense histogram.
+	 * @param histy The dense histogram.
+	 * @return The sparse histogram.
+	 */
+	public static SparseHistogram of(int[] histy) {
+		int nonzero = 0;
+		for (int count : histy) {
+			if (count != 0) {
+				nonzero++;
+			}
+		}
+		int[] bins = new int[nonzero];
+		int[] counts = new int[nonzero];
+		int k = 0;
+		for (int i = 0; i < histy.length; i++) {
+			if (histy[i] != 0) {
+				bins[k] = i;
+				counts[k++] = histy[i];
+			}
+		}
+		return new SparseHistogram(histy.length, bins, counts);
+	}
+
+	// Returns the number of nonzero bins.
+	public int size() {
+		return bins.length;
+	}
+
+	/**
+	 * Expands the histogram into a new dense array.
+	 * @return The dense histogram.
+	 */
+	public int[] toDense() {
+		int[] histy = new int[length];
+		for (int k = 0; k < bins.length; k++) {
+			histy[bins[k]] = counts[k];
+		}
+		return histy;
+	}
+}
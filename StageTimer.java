@@ -0,0 +1,84 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times consecutive stages on one thread: every lap reports to the metrics the
+ * time and the bytes the thread allocated since the previous lap. Allocations
+ * made by other threads on its behalf, such as fork-join histogram strips, are
+ * not included. A timer must only be used by one thread at a time.
+ */
+public class StageTimer {
+
+	// Per-thread allocation counter of HotSpot, null if the JVM does not provide one.
+	private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+			if (threads.isThreadAllocatedMemorySupported()) {
+				threads.setThreadAllocatedMemoryEnabled(true);
+				return threads;
+			}
+		}
+		return null;
+	}
+
+	private PipelineMetrics metrics = PipelineMetrics.NONE;
+	private long nanos;
+	private long bytes;
+	private long startNanos;
+	private long startBytes;
+
+	/**
+	 * Starts the first lap.
+	 * @param metrics The receiver of the laps; with {@link PipelineMetrics#NONE} laps cost nothing.
+	 */
+	public void start(PipelineMetrics metrics) {
+		this.metrics = metrics;
+		if (metrics != PipelineMetrics.NONE) {
+			nanos = System.nanoTime();
+			bytes = allocatedBytes();
+			startNanos = nanos;
+			startBytes = bytes;
+		}
+	}
+
+	/**
+	 * Ends the current lap, reports it as a stage and starts the next one.
+	 * @param stage The name of the stage that just ended.
+	 */
+	public void lap(String stage) {
+		if (metrics == PipelineMetrics.NONE) {
+			return;
+		}
+		long now = System.nanoTime();
+		long allocated = allocatedBytes();
+		metrics.stage(stage, now - nanos, THREADS == null ? -1 : allocated - bytes);
+		nanos = now;
+		bytes = allocated;
+	}
+
+	/**
+	 * Reports everything since the timer was started as one stage, without ending the current lap.
+	 * @param stage The name of the whole.
+	 */
+	public void total(String stage) {
+		if (metrics == PipelineMetrics.NONE) {
+			return;
+		}
+		metrics.stage(stage, System.nanoTime() - startNanos, THREADS == null ? -1 : allocatedBytes() - startBytes);
+	}
+
+	// Adds to a counter of the metrics the timer reports to.
+	public void count(String counter, long amount) {
+		metrics.count(counter, amount);
+	}
+
+	/**
+	 * Returns the heap bytes allocated so far by the calling thread.
+	 * @return The allocated bytes, or -1 if the JVM does not count them.
+	 */
+	static long allocatedBytes() {
+		return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
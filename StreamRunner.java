@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+
+/**
+ * Streaming mode: detects objects in every frame of a raw video, a file or
+ * FIFO of planar RGB frames written one after the other, and writes the
+ * detections of each frame as JSON Lines or CSV keyed by the frame number.
+ * One frame buffer and one workspace are reused for the whole stream, so after
+ * the first frames only the detections themselves are allocated.
+ *
+ * Usage: java ImageDisplay --stream SOURCE [--format jsonl|csv] [--out FILE]
+ * [--size WxH] [--engine clusters|windows] [--budget MS] [--similarity NAME[:MIN]]
+ * [--joint] [--profiles FILE] [--object-tasks] [--prefilter DENSITY] [--incremental] OBJECT...
+ * where SOURCE is a file, a FIFO or - for standard input. With --incremental
+ * only the regions that changed since the previous frame are searched again,
+ * see {@link IncrementalDetector}. The frame size is
+ * resolved as described in {@link FrameSize}; a stream that does not end on a
+ * frame boundary has its trailing bytes ignored.
+ */
+public class StreamRunner {
+
+	static final String USAGE = "usage: java ImageDisplay --stream SOURCE [--format jsonl|csv] [--out FILE]"
+			+ " [--size WxH] [--engine clusters|windows] [--budget MS] [--similarity NAME[:MIN]] [--joint]"
+			+ " [--profiles FILE] [--object-tasks] [--prefilter DENSITY] [--incremental] OBJECT...";
+
+	// Frames excluded from the steady state figures, while buffers are sized and code is compiled.
+	static final int WARMUP_FRAMES = 10;
+
+	private final ObjectFinder finder;
+
+	public StreamRunner(ObjectFinder finder) {
+		this.finder = finder;
+	}
+
+	/**
+	 * Runs the stream until its end.
+	 * @param args The arguments following --stream.
+	 * @return The exit code: 0 on success, 1 if the stream cannot be read, 2 on bad arguments.
+	 */
+	public int run(String[] args) {
+		String format = "jsonl";
+		String outPath = null;
+		boolean incremental = false;
+		List<String> positional = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--format") && i + 1 < args.length) {
+				format = args[++i];
+			} else if (args[i].equals("--out") && i + 1 < args.length) {
+				outPath = args[++i];
+			} else if (args[i].equals("--incremental")) {
+				incremental = true;
+			} else {
+				positional.add(args[i]);
+			}
+		}
+		if (positional.size() < 2 || !(format.equals("jsonl") || format.equals("csv"))) {
+			System.err.println(USAGE);
+			return 2;
+		}
+		if (incremental && finder.windowDetector() != null) {
+			System.err.println("--incremental only applies to the clusters engine");
+			return 2;
+		}
+		if (incremental && finder.prefilterDensity() > 0) {
+			System.err.println("--incremental labels every candidate and cannot be combined with --prefilter");
+			return 2;
+		}
+		String source = positional.get(0);
+		List<ObjectModel> models = finder.loadObjects(positional.subList(1, positional.size()).toArray(new String[0]));
+
+		FrameSize size;
+		try {
+			size = FrameSize.ofStream(source, finder.size);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 2;
+		}
+
+		PrintStream out = System.out;
+		if (outPath != null) {
+			try {
+				out = new PrintStream(outPath, StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return 2;
+			}
+		}
+
+		PipelineStats stats = new PipelineStats();
+		try {
+			stats.register("stream");
+		} catch (JMException e) {
+			System.err.println("metrics not published over JMX: " + e);
+		}
+		PipelineMetrics previous = finder.metrics();
+		finder.setMetrics(stats);
+
+		DetectionWriter writer = new DetectionWriter(out, format, "frame");
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) size.frameLength()); // read without a temporary copy
+		RgbFrame frame = new RgbFrame(size.width, size.height, buffer);
+		DetectionWorkspace workspace = finder.workspace();
+		StageTimer timer = new StageTimer();
+		IncrementalDetector detector = incremental ? new IncrementalDetector(finder, models) : null;
+
+		long frames = 0;
+		long start = System.nanoTime();
+		long steadyNanos = 0;
+		long steadyBytes = 0;
+		long writeBytes = 0; // allocated while writing output in the steady state
+		try (ReadableByteChannel channel = source.equals("-") ? Channels.newChannel(System.in)
+				: FileChannel.open(Paths.get(source))) {
+			while (true) {
+				if (frames == WARMUP_FRAMES) {
+					steadyNanos = System.nanoTime();
+					steadyBytes = StageTimer.allocatedBytes();
+				}
+				timer.start(stats);
+				int read = readFrame(channel, buffer);
+				if (read < buffer.capacity()) {
+					if (read > 0) {
+						System.err.println("ignoring " + read + " trailing bytes, less than a " + size + " frame");
+					}
+					break;
+				}
+				timer.lap("read");
+				List<Detection> detections;
+				if (detector != null) {
+					detections = detector.detect(frame);
+				} else {
+					DecodedImage scene = workspace.decode(frame);
+					timer.lap("decode");
+					detections = finder.detectObjects(scene, models, workspace);
+				}
+				timer.lap("detect");
+				long beforeWrite = StageTimer.allocatedBytes();
+				writer.write(frames, detections);
+				if (frames >= WARMUP_FRAMES) {
+					writeBytes += StageTimer.allocatedBytes() - beforeWrite;
+				}
+				timer.lap("write");
+				timer.total("frame");
+				frames++;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return 1;
+		} finally {
+			finder.setMetrics(previous);
+			if (out != System.out) {
+				out.close();
+			}
+		}
+
+		long end = System.nanoTime();
+		System.err.print(stats.dump());
+		System.err.printf("%d frames of %s in %.3f s, %.1f fps%n", frames, size, (end - start) / 1e9,
+				frames * 1e9 / Math.max(1, end - start));
+		if (frames > WARMUP_FRAMES) {
+			long steady = frames - WARMUP_FRAMES;
+			long bytes = StageTimer.allocatedBytes() - steadyBytes;
+			System.err.printf("steady state after %d frames: %.1f fps%n", WARMUP_FRAMES,
+					steady * 1e9 / Math.max(1, end - steadyNanos));
+			if (steadyBytes >= 0) {
+				System.err.printf("allocated per frame: %d B detecting, %d B writing output%n",
+						(bytes - writeBytes) / steady, writeBytes / steady);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Fills the buffer with the next frame, reading until it is full or the stream ends.
+	 * @param channel The stream.
+	 * @param buffer The frame buffer, overwritten from its start.
+	 * @return The number of bytes read, less than the capacity at the end of the stream.
+	 * @throws IOException If the stream cannot be read.
+	 */
+	static int readFrame(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				break;
+			}
+		}
+		return buffer.position();
+	}
+}
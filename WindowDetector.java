@@ -0,0 +1,294 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A detector engine that does not rely on clusters: square windows of several
+ * sizes around the size of the object are slid over the scene and every window
+ * is compared with the object the same way as clusters. Window
+ * histograms come from a {@link RegionHistogramIndex}, and windows with too few
+ * candidate pixels are pruned in constant time with a summed-area table of the
+ * candidates before any histogram is computed. Rows of windows are searched in
+ * parallel; the search of a scene stops when its time budget is spent, and
+ * overlapping accepted windows are reduced to the best scoring one.
+ *
+ * The last window of every row and column is moved back against the right or
+ * bottom edge, so every pixel is covered by windows of every size.
+ *
+ * The engine finds objects that touch each other or are fragmented beyond the
+ * cluster range, at the cost of boxes aligned to the window grid. It is
+ * approximate: window sizes come from a few scales of the object size and
+ * positions from a stride of a quarter window, so an object between sizes or
+ * positions may be missed or boxed loosely, and the budget can cut the search.
+ */
+public class WindowDetector {
+
+	// Window sides relative to the side of a square of the object's pixel count.
+	static final double[] SCALES = {0.5, 0.75, 1, 1.5, 2};
+
+	// Windows are moved by this fraction of their side.
+	static final int STRIDE_DIVISOR = 4;
+
+	// Smallest share of candidate pixels a window needs to be compared.
+	static final double DENSITY = 0.2;
+
+	// Accepted windows sharing more than this part of the smaller box with a better one are dropped.
+	static final double OVERLAP = 0.3;
+
+	// Rows of windows searched by one task.
+	static final int ROWS_PER_TASK = 2;
+
+	private final ObjectFinder finder;
+	private final ForkJoinPool pool;
+	private final long budgetNanos;
+
+	/**
+	 * @param finder The finder whose thresholds and metrics are used.
+	 * @param pool The pool windows are searched on.
+	 * @param budgetMillis The time budget of a scene in milliseconds, 0 for none.
+	 */
+	public WindowDetector(ObjectFinder finder, ForkJoinPool pool, long budgetMillis) {
+		this.finder = finder;
+		this.pool = pool;
+		this.budgetNanos = budgetMillis <= 0 ? Long.MAX_VALUE : budgetMillis * 1_000_000;
+	}
+
+	// The search of one object at one window size.
+	private class Search {
+		final ObjectModel model;
+		final RegionHistogramIndex index;
+		final int[] candidateSums; // (width + 1) x (height + 1) summed-area table of the candidates
+		final int width;
+		final int height;
+		final int side;
+		final int stride;
+		final int minCandidates;
+		final long deadline;
+		final LongAdder evaluated = new LongAdder();
+		final LongAdder pruned = new LongAdder();
+		final LongAdder skipped = new LongAdder();
+
+		Search(ObjectModel model, RegionHistogramIndex index, int[] candidateSums, DecodedImage scene, int side,
+			   long deadline) {
+			this.model = model;
+			this.index = index;
+			this.candidateSums = candidateSums;
+			this.width = scene.width;
+			this.height = scene.height;
+			this.side = side;
+			this.stride = Math.max(1, side / STRIDE_DIVISOR);
+			this.minCandidates = Math.max(model.params.minClusterSize, (int) (DENSITY * side * side));
+			this.deadline = deadline;
+		}
+
+		// Rows and columns step by the stride, with one more when needed to reach the last pixel.
+		int rows() {
+			return (height - side + stride - 1) / stride + 1;
+		}
+
+		int columns() {
+			return (width - side + stride - 1) / stride + 1;
+		}
+
+		int candidates(int x0, int y0, int x1, int y1) {
+			int w = width + 1;
+			return candidateSums[(y1 + 1) * w + x1 + 1] - candidateSums[y0 * w + x1 + 1]
+					- candidateSums[(y1 + 1) * w + x0] + candidateSums[y0 * w + x0];
+		}
+
+		// Compares the windows of a range of rows and returns the accepted ones.
+		List<Detection> searchRows(int fromRow, int toRow) {
+			List<Detection> accepted = new ArrayList<>();
+			DetectionParams params = model.params;
+			int[] histy = new int[DecodedImage.bins(params.conversion)];
+			int columns = columns();
+			for (int row = fromRow; row < toRow; row++) {
+				if (System.nanoTime() > deadline) {
+					skipped.add((long) (toRow - row) * columns);
+					break;
+				}
+				int y0 = Math.min(row * stride, height - side); // the last row is clamped to the bottom edge
+				for (int column = 0; column < columns; column++) {
+					int x0 = Math.min(column * stride, width - side);
+					int x1 = x0 + side - 1;
+					int y1 = y0 + side - 1;
+					int count = candidates(x0, y0, x1, y1);
+					if (count < minCandidates) {
+						pruned.increment();
+						continue;
+					}
+					evaluated.increment();
+					index.histogram(x0, y0, x1, y1, params.clusterThreshold, histy);
+					double score = finder.matchScore(histy, model);
+					if (score >= 0) {
+						accepted.add(new Detection(model.name, x0, y0, x1, y1, count, score));
+					}
+				}
+			}
+			return accepted;
+		}
+	}
+
+	// Searches a range of window rows, splitting it in halves until ranges are small enough.
+	private static class Rows extends RecursiveTask<List<Detection>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Search search;
+		private final int fromRow;
+		private final int toRow;
+
+		Rows(Search search, int fromRow, int toRow) {
+			this.search = search;
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected List<Detection> compute() {
+			if (toRow - fromRow <= ROWS_PER_TASK) {
+				return search.searchRows(fromRow, toRow);
+			}
+			int mid = (fromRow + toRow) >>> 1;
+			Rows top = new Rows(search, fromRow, mid);
+			Rows bottom = new Rows(search, mid, toRow);
+			top.fork();
+			List<Detection> found = bottom.compute();
+			List<Detection> topFound = top.join();
+			topFound.addAll(found);
+			return topFound;
+		}
+	}
+
+	/**
+	 * Detects every object in the scene with windows.
+	 * @param scene The decoded scene.
+	 * @param models The objects to look for.
+	 * @param workspace The buffers to use, not shared with any other thread during the call.
+	 * @return The windows found, in object order and by position for each object, as a list that cannot be
+	 *         modified.
+	 */
+	public List<Detection> detect(DecodedImage scene, List<ObjectModel> models, DetectionWorkspace workspace) {
+		StageTimer timer = workspace.timer;
+		timer.start(finder.metrics());
+		long deadline = budgetNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + budgetNanos;
+		Arrays.fill(workspace.sceneCounted, false);
+		boolean[] indexed = new boolean[DecodedImage.CONVERSIONS.length];
+		List<Detection> detections = new ArrayList<>();
+
+		for (ObjectModel model : models) {
+			DetectionParams params = model.params;
+			int component = DecodedImage.component(params.conversion);
+			if (!workspace.sceneCounted[component]) {
+				scene.histogram(params.conversion, 0, false, workspace.sceneGrams[component]);
+				workspace.sceneCounted[component] = true;
+			}
+			int[] imgGram = workspace.imgGrams[component];
+			System.arraycopy(workspace.sceneGrams[component], 0, imgGram, 0, imgGram.length);
+			DecodedImage.filter(imgGram, params.imageThreshold);
+			if (!finder.imageExist(imgGram, model.objectGram, params.existThreshold)) {
+				timer.count("objects absent", 1);
+				continue;
+			}
+			if (!indexed[component]) {
+				workspace.regionIndex(params.conversion).build(scene);
+				indexed[component] = true;
+			}
+			int[] candidateSums = candidateSums(scene, params.conversion, model.objectGram, imgGram, workspace);
+			timer.lap("window setup");
+
+			// Search every window size and keep the best of overlapping windows.
+			List<Detection> found = new ArrayList<>();
+			int objectSide = (int) Math.sqrt(objectPixels(model));
+			for (double scale : SCALES) {
+				int side = Math.min(Math.min(scene.width, scene.height), Math.max(16, (int) (objectSide * scale)));
+				Search search = new Search(model, workspace.regionIndex(params.conversion), candidateSums, scene, side,
+						deadline);
+				found.addAll(pool.invoke(new Rows(search, 0, search.rows())));
+				timer.count("windows evaluated", search.evaluated.sum());
+				timer.count("windows pruned", search.pruned.sum());
+				timer.count("windows over budget", search.skipped.sum());
+			}
+			detections.addAll(suppress(found));
+			timer.lap("window search");
+		}
+		timer.count("detections", detections.size());
+		return Collections.unmodifiableList(detections);
+	}
+
+	// Builds the summed-area table of the pixels whose bin is in both the object and the scene.
+	private static int[] candidateSums(DecodedImage scene, String conversion, int[] objectGram, int[] imgGram,
+									   DetectionWorkspace workspace) {
+		int w = scene.width + 1;
+		int[] sums = workspace.candidateSums(w * (scene.height + 1));
+		short[] plane = scene.plane(conversion);
+		Arrays.fill(sums, 0, w, 0); // the buffer holds the table of the previous scene, which can be larger
+		for (int y = 0; y < scene.height; y++) {
+			int rowSum = 0;
+			sums[(y + 1) * w] = 0;
+			for (int x = 0; x < scene.width; x++) {
+				int bin = plane[y * scene.width + x];
+				if (bin >= 0 && objectGram[bin] > 0 && imgGram[bin] > 0) {
+					rowSum++;
+				}
+				sums[(y + 1) * w + x + 1] = sums[y * w + x + 1] + rowSum;
+			}
+		}
+		return sums;
+	}
+
+	// Estimates the number of pixels of the object from its largest raw histogram.
+	private static long objectPixels(ObjectModel model) {
+		long pixels = 0;
+		for (String conversion : new String[] {"h", "u", "v"}) {
+			long sum = 0;
+			for (int count : model.rawGram(conversion)) {
+				sum += count;
+			}
+			pixels = Math.max(pixels, sum);
+		}
+		return pixels;
+	}
+
+	// Keeps the best windows, dropping those overlapping a better one, ordered by position. Windows are
+	// ranked by score, then by candidate pixels, then by the smallest box holding them.
+	private static List<Detection> suppress(List<Detection> found) {
+		found.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score)
+				: a.pixels != b.pixels ? Integer.compare(b.pixels, a.pixels)
+				: area(a) != area(b) ? Long.compare(area(a), area(b))
+				: a.minY != b.minY ? Integer.compare(a.minY, b.minY) : Integer.compare(a.minX, b.minX));
+		List<Detection> kept = new ArrayList<>();
+		for (Detection candidate : found) {
+			boolean overlaps = false;
+			for (Detection best : kept) {
+				if (overlap(candidate, best) > OVERLAP) {
+					overlaps = true;
+					break;
+				}
+			}
+			if (!overlaps) {
+				kept.add(candidate);
+			}
+		}
+		kept.sort((a, b) -> a.minY != b.minY ? Integer.compare(a.minY, b.minY) : Integer.compare(a.minX, b.minX));
+		return kept;
+	}
+
+	// Intersection of two boxes over the area of the smaller one, so nested windows of different sizes overlap.
+	private static double overlap(Detection a, Detection b) {
+		long w = Math.min(a.maxX, b.maxX) - Math.max(a.minX, b.minX) + 1;
+		long h = Math.min(a.maxY, b.maxY) - Math.max(a.minY, b.minY) + 1;
+		if (w <= 0 || h <= 0) {
+			return 0;
+		}
+		return w * h / (double) Math.min(area(a), area(b));
+	}
+
+	private static long area(Detection d) {
+		return (long) (d.maxX - d.minX + 1) * (d.maxY - d.minY + 1);
+	}
+}
@@ -0,0 +1,425 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import benchmark.Stages;
+
+/**
+ * Builds the detection stages measured by the JMH benchmarks. Inputs are
+ * synthetic scenes and objects generated from fixed seeds, so runs before and
+ * after a change measure the same work; they are built when a stage is created,
+ * and a call runs only the stage and returns its result. The reference
+ * implementations that earlier stages replaced are kept here for comparison.
+ */
+public class BenchmarkStages implements Stages {
+
+	// Size of the scenes of the stage benchmarks.
+	static final int WIDTH = 640;
+	static final int HEIGHT = 480;
+
+	/**
+	 * Builds a scene of colored noise with a few colored ellipses in it.
+	 * @param width The width of the scene.
+	 * @param height The height of the scene.
+	 * @param seed The seed of the random generator, for reproducible scenes.
+	 * @return The scene.
+	 */
+	static BufferedImage syntheticScene(int width, int height, long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int gray = 100 + random.nextInt(40);
+				int tint = random.nextInt(20);
+				img.setRGB(x, y, (gray << 16) | ((gray + tint / 2) << 8) | (gray + tint));
+			}
+		}
+
+		int[] colors = {0xF096B4, 0xDC141E, 0xFADC14, 0x1428DC};
+		for (int k = 0; k < 8; k++) {
+			int cx = random.nextInt(width);
+			int cy = random.nextInt(height);
+			int rx = width / 16 + random.nextInt(width / 16);
+			int ry = height / 16 + random.nextInt(height / 16);
+			int color = colors[k % colors.length];
+			for (int y = Math.max(0, cy - ry); y < Math.min(height, cy + ry); y++) {
+				for (int x = Math.max(0, cx - rx); x < Math.min(width, cx + rx); x++) {
+					double dx = (x - cx) / (double) rx;
+					double dy = (y - cy) / (double) ry;
+					if (dx * dx + dy * dy <= 1) {
+						img.setRGB(x, y, color + random.nextInt(4) * 0x010101);
+					}
+				}
+			}
+		}
+		return img;
+	}
+
+	/**
+	 * Builds an object image: a colored ellipse on the (0, 255, 0) background.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 * @param color The color of the ellipse, varied slightly per pixel.
+	 * @param seed The seed of the random generator, for reproducible images.
+	 * @return The object image.
+	 */
+	static BufferedImage syntheticObject(int width, int height, int color, long seed) {
+		Random random = new Random(seed);
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double dx = (x - width / 2) / (width / 4.0);
+				double dy = (y - height / 2) / (height / 4.0);
+				img.setRGB(x, y, dx * dx + dy * dy <= 1 ? color + random.nextInt(4) * 0x010101 : 0x00FF00);
+			}
+		}
+		return img;
+	}
+
+	// Builds the model of a synthetic object with the given parameters.
+	static ObjectModel syntheticModel(String name, int color, DetectionParams params) {
+		DecodedImage object = DecodedImage.decode(syntheticObject(640, 480, color, color));
+		return new ObjectModel(name, params, object.histogram("h", 0, true), object.histogram("u", 0, true),
+				object.histogram("v", 0, true), SparseHistogram.of(object.histogram("uv", 0, true)));
+	}
+
+	// Writes an image as a planar RGB file.
+	static File writePlanar(BufferedImage img) throws IOException {
+		int size = img.getWidth() * img.getHeight();
+		byte[] bytes = new byte[size * 3];
+		for (int ind = 0; ind < size; ind++) {
+			int pix = img.getRGB(ind % img.getWidth(), ind / img.getWidth());
+			bytes[ind] = (byte) (pix >> 16);
+			bytes[ind + size] = (byte) (pix >> 8);
+			bytes[ind + 2 * size] = (byte) pix;
+		}
+		File file = File.createTempFile("scene", ".rgb");
+		file.deleteOnExit();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(bytes);
+		}
+		return file;
+	}
+
+	// The RandomAccessFile and BufferedImage.setRGB reader the mapped frame replaced, kept as a reference.
+	static BufferedImage setRgbRead(File file, int width, int height) throws IOException {
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		byte[] bytes = new byte[width * height * 3];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.readFully(bytes);
+		}
+		int ind = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int pix = 0xff000000 | ((bytes[ind] & 0xff) << 16) | ((bytes[ind + height * width] & 0xff) << 8)
+						| (bytes[ind + height * width * 2] & 0xff);
+				img.setRGB(x, y, pix);
+				ind++;
+			}
+		}
+		return img;
+	}
+
+	// The floating point hue, u and v conversion the lookup tables replaced, kept as a reference.
+	static short[][] floatingDecode(RgbFrame frame) {
+		int size = frame.width * frame.height;
+		short[][] planes = new short[3][size];
+		for (int ind = 0; ind < size; ind++) {
+			int r = frame.red(ind);
+			int g = frame.green(ind);
+			int b = frame.blue(ind);
+			int bigM = Math.max(r, Math.max(g, b));
+			int c = bigM - Math.min(r, Math.min(g, b));
+			int h = -1;
+			if (c != 0) {
+				double hPrime;
+				if (bigM == r) {
+					hPrime = ((g - b) / (double) c) % 6;
+				} else if (bigM == g) {
+					hPrime = ((b - r) / (double) c) + 2;
+				} else {
+					hPrime = ((r - g) / (double) c) + 4;
+				}
+				h = (int) (60 * hPrime);
+				if (h < 0) {
+					h = h + 360;
+				}
+			}
+			int u = (int) ((-0.147 * (double) r) - (0.289 * (double) g) + (0.436 * (double) b));
+			int v = (int) ((0.615 * (double) r) - (0.515 * (double) g) - (0.100 * (double) b));
+			planes[0][ind] = (short) h;
+			planes[1][ind] = (short) (u < 0 ? -1 : u);
+			planes[2][ind] = (short) (v < 0 ? -1 : v);
+		}
+		return planes;
+	}
+
+	// The boxed List<List<Integer>> point generation the point store replaced, kept as a reference.
+	static List<List<List<Integer>>> boxedImagePoints(DecodedImage img, String conversion, int[] imgGram) {
+		List<List<List<Integer>>> points = new ArrayList<>();
+		for (int i = 0; i < imgGram.length; i++) {
+			points.add(new ArrayList<>());
+		}
+		short[] plane = img.plane(conversion);
+		for (int y = 0; y < img.height; y++) {
+			for (int x = 0; x < img.width; x++) {
+				int bin = plane[y * img.width + x];
+				if (bin < 0 || imgGram[bin] == 0) {
+					continue;
+				}
+				List<Integer> point = new ArrayList<>();
+				point.add(x);
+				point.add(y);
+				points.get(bin).add(point);
+			}
+		}
+		return points;
+	}
+
+	// The boxed pool the island matrix used to be filled from.
+	static List<List<Integer>> boxedPool(List<List<List<Integer>>> points, int[] objectGram) {
+		List<List<Integer>> pool = new ArrayList<>();
+		for (int i = 0; i < objectGram.length; i++) {
+			if (objectGram[i] > 0) {
+				pool.addAll(points.get(i));
+			}
+		}
+		return pool;
+	}
+
+	// Counts the histogram of a rectangle pixel by pixel, the reference for the region index.
+	static int[] boxHistogram(DecodedImage img, String conversion, int x0, int y0, int x1, int y1) {
+		short[] plane = img.plane(conversion);
+		int[] histy = new int[DecodedImage.bins(conversion)];
+		for (int y = y0; y <= y1; y++) {
+			for (int p = y * img.width + x0; p <= y * img.width + x1; p++) {
+				if (plane[p] >= 0) {
+					histy[plane[p]]++;
+				}
+			}
+		}
+		DecodedImage.filter(histy, 10);
+		return histy;
+	}
+
+	// Pools the point store into an island matrix.
+	static byte[] packedPool(PointStore points, int[] objectGram, int size) {
+		byte[] island = new byte[size];
+		for (int i = 0; i < objectGram.length; i++) {
+			if (objectGram[i] > 0) {
+				for (int k = points.start(i); k < points.end(i); k++) {
+					island[points.points[k]] = 1;
+				}
+			}
+		}
+		return island;
+	}
+
+	// Writes the scene of the stage benchmarks to a temporary file.
+	private static File sceneFile() throws IOException {
+		return writePlanar(syntheticScene(WIDTH, HEIGHT, 1));
+	}
+
+	// Reads and decodes the scene of the stage benchmarks.
+	private static DecodedImage scene() throws IOException {
+		return DecodedImage.decode(RgbFrame.read(sceneFile().getPath(), WIDTH, HEIGHT));
+	}
+
+	// Pools the candidates of the scene in a band of frequent bins into an island matrix.
+	private static byte[] island(DecodedImage scene, String conversion) {
+		int[] imgGram = scene.histogram(conversion, 10, false);
+		int[] objectGram = scene.histogram(conversion, 2000, false);
+		return packedPool(PointStore.byBin(scene, conversion, imgGram), objectGram, WIDTH * HEIGHT);
+	}
+
+	@Override
+	public Callable<Object> read(String reader) throws IOException {
+		File file = sceneFile();
+		if (reader.equals("setRGB")) {
+			return () -> DecodedImage.decode(setRgbRead(file, WIDTH, HEIGHT));
+		}
+		return () -> DecodedImage.decode(RgbFrame.read(file.getPath(), WIDTH, HEIGHT));
+	}
+
+	@Override
+	public Callable<Object> decode(String decoder) throws IOException {
+		RgbFrame frame = RgbFrame.read(sceneFile().getPath(), WIDTH, HEIGHT);
+		if (decoder.equals("floating")) {
+			return () -> floatingDecode(frame);
+		}
+		DecodedImage[] reuse = new DecodedImage[1];
+		return () -> reuse[0] = DecodedImage.decode(frame, reuse[0]);
+	}
+
+	@Override
+	public Callable<Object> imageHistogram(String conversion) throws IOException {
+		DecodedImage scene = scene();
+		return () -> scene.histogram(conversion, 10, false);
+	}
+
+	@Override
+	public Callable<Object> objectHistogram(String conversion) {
+		DecodedImage object = DecodedImage.decode(syntheticObject(WIDTH, HEIGHT, 0xF096B4, 3));
+		return () -> object.histogram(conversion, 200, true);
+	}
+
+	@Override
+	public Callable<Object> points(String store, String conversion) throws IOException {
+		DecodedImage scene = scene();
+		int[] imgGram = scene.histogram(conversion, 10, false);
+		int[] objectGram = scene.histogram(conversion, 2000, false);
+		if (store.equals("boxed")) {
+			return () -> boxedPool(boxedImagePoints(scene, conversion, imgGram), objectGram);
+		}
+		return () -> packedPool(PointStore.byBin(scene, conversion, imgGram), objectGram, WIDTH * HEIGHT);
+	}
+
+	@Override
+	public Callable<Object> labelClusters(String conversion, int clusterRange) throws IOException {
+		byte[] island = island(scene(), conversion);
+		ComponentLabeler labeler = new ComponentLabeler();
+		return () -> labeler.label(island, WIDTH, HEIGHT, clusterRange);
+	}
+
+	@Override
+	public Callable<Object> clusterHistograms(String conversion) throws IOException {
+		DecodedImage scene = scene();
+		ComponentLabeler labeler = new ComponentLabeler();
+		int clusterCount = labeler.label(island(scene, conversion), WIDTH, HEIGHT, 1);
+		PointStore clusters = labeler.members();
+		return () -> {
+			int[] last = null;
+			for (int c = 0; c < clusterCount; c++) {
+				if (labeler.size(c) >= 300) {
+					last = scene.histogram(conversion, clusters, c, 10);
+				}
+			}
+			return last;
+		};
+	}
+
+	@Override
+	public Callable<Object> regionIndexBuild(String conversion) throws IOException {
+		DecodedImage scene = scene();
+		RegionHistogramIndex index = new RegionHistogramIndex(conversion, false).build(scene);
+		return () -> index.build(scene);
+	}
+
+	@Override
+	public Callable<Object> boxHistograms(String method, String conversion) throws IOException {
+		DecodedImage scene = scene();
+		ComponentLabeler labeler = new ComponentLabeler();
+		int clusterCount = labeler.label(island(scene, conversion), WIDTH, HEIGHT, 1);
+		RegionHistogramIndex index = new RegionHistogramIndex(conversion, false).build(scene);
+		boolean scanned = method.equals("scanned");
+		return () -> {
+			int[] last = null;
+			for (int c = 0; c < clusterCount; c++) {
+				if (labeler.size(c) >= 300) {
+					last = scanned
+							? boxHistogram(scene, conversion, labeler.minX(c), labeler.minY(c), labeler.maxX(c), labeler.maxY(c))
+							: index.histogram(labeler.minX(c), labeler.minY(c), labeler.maxX(c), labeler.maxY(c), 10);
+				}
+			}
+			return last;
+		};
+	}
+
+	@Override
+	public Callable<Object> compareClusters(String similarity) {
+		Random random = new Random(18);
+		int[] objectGram = new int[DecodedImage.HUE_BINS];
+		int[][] clusterGrams = new int[1000][DecodedImage.HUE_BINS];
+		for (int bin = 40; bin < 80; bin++) {
+			objectGram[bin] = 1 + random.nextInt(500);
+		}
+		for (int[] clusterGram : clusterGrams) {
+			for (int k = 0; k < 60; k++) {
+				clusterGram[30 + random.nextInt(60)] += random.nextInt(50);
+			}
+		}
+		if (similarity.equals("ratio")) {
+			ObjectFinder finder = new ObjectFinder();
+			return () -> {
+				double total = 0;
+				for (int[] clusterGram : clusterGrams) {
+					total += finder.colorScore(clusterGram, objectGram);
+				}
+				return total;
+			};
+		}
+		HistogramSimilarity metric = HistogramSimilarity.named(similarity);
+		return () -> {
+			double total = 0;
+			for (int[] clusterGram : clusterGrams) {
+				total += metric.similarity(clusterGram, objectGram);
+			}
+			return total;
+		};
+	}
+
+	@Override
+	public Callable<Object> sceneHistogram(String pool) {
+		DecodedImage large = DecodedImage.decode(syntheticScene(1920, 1080, 2));
+		if (pool.equals("single")) {
+			HistogramEngine single = new HistogramEngine(new ForkJoinPool(1));
+			return () -> single.histogram(large, large.hue, 361, false, 10);
+		}
+		return () -> large.histogram("h", 10, false);
+	}
+
+	@Override
+	public Callable<Object> candidateScan(int objects) throws IOException {
+		DecodedImage scene = scene();
+		MultiObjectScan scan = new MultiObjectScan();
+		String[] conversions = new String[objects];
+		int[][] poolGrams = new int[objects][DecodedImage.HUE_BINS];
+		for (int i = 0; i < objects; i++) {
+			conversions[i] = "h";
+			int first = (i * 37) % (DecodedImage.HUE_BINS - 20);
+			Arrays.fill(poolGrams[i], first, first + 20, 1);
+		}
+		return () -> scan.scan(scene, conversions, poolGrams);
+	}
+
+	// Returns the four objects of the end to end stage.
+	static List<ObjectModel> syntheticModels() {
+		List<ObjectModel> models = new ArrayList<>();
+		models.add(syntheticModel("pink", 0xF096B4, new DetectionParams("h", 10, 200, 0.90, 10, .90, 300, 1)));
+		models.add(syntheticModel("red", 0xDC141E, new DetectionParams("v", 100, 300, 0.75, 10, .75, 300, 10)));
+		models.add(syntheticModel("yellow", 0xFADC14, new DetectionParams("h", 200, 250, 0.80, 100, .70, 300, 1)));
+		models.add(syntheticModel("blue", 0x1428DC, new DetectionParams("h", 10, 200, 0.95, 10, .95, 300, 1)));
+		return models;
+	}
+
+	@Override
+	public Callable<Object> detect(String finder, int width, int height) throws IOException {
+		ObjectFinder objectFinder = new ObjectFinder();
+		if (finder.equals("no prefilter")) {
+			objectFinder.setBlockPrefilter(0, 0);
+		} else if (finder.equals("prefilter 0.2")) {
+			objectFinder.setBlockPrefilter(ObjectFinder.BLOCK, 0.2);
+		} else if (finder.equals("object tasks")) {
+			objectFinder.setObjectPool(ForkJoinPool.commonPool());
+		} else if (finder.equals("windows")) {
+			objectFinder.setWindowDetector(new WindowDetector(objectFinder, ForkJoinPool.commonPool(), 0));
+		} else if (!finder.equals("default")) {
+			throw new IllegalArgumentException("unknown finder: " + finder);
+		}
+		List<ObjectModel> models = syntheticModels();
+		File file = writePlanar(syntheticScene(width, height, 4));
+		DetectionWorkspace workspace = new DetectionWorkspace();
+		return () -> {
+			DecodedImage decoded = workspace.decode(RgbFrame.read(file.getPath(), width, height));
+			return objectFinder.detectObjects(decoded, models, workspace);
+		};
+	}
+}
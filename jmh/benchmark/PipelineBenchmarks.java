@@ -0,0 +1,266 @@
+package benchmark;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of every detection stage, one method per stage with its variants
+ * as parameters. The inputs of a stage are built once per trial by its state and
+ * every call runs only the stage; results go to the blackhole. Build and run with:
+ * mvn -B package
+ * java -jar target/benchmarks.jar [stage regex] -prof gc
+ * The stages come from the default package through {@link Stages}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmarks {
+
+	// The stages of the program, built by BenchmarkStages.
+	static final Stages STAGES = Stages.load();
+
+	@State(Scope.Thread)
+	public static class ReadState {
+		@Param({"setRGB", "mapped"})
+		public String reader;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.read(reader);
+		}
+	}
+
+	@Benchmark
+	public void read(ReadState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class DecodeState {
+		@Param({"floating", "tables"})
+		public String decoder;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.decode(decoder);
+		}
+	}
+
+	@Benchmark
+	public void decode(DecodeState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class ImageHistogramState {
+		@Param({"h", "u", "v", "uv"})
+		public String conversion;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.imageHistogram(conversion);
+		}
+	}
+
+	@Benchmark
+	public void imageHistogram(ImageHistogramState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class ObjectHistogramState {
+		@Param({"h", "u", "v", "uv"})
+		public String conversion;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.objectHistogram(conversion);
+		}
+	}
+
+	@Benchmark
+	public void objectHistogram(ObjectHistogramState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class PointsState {
+		@Param({"boxed", "packed"})
+		public String store;
+		@Param({"h", "v", "uv"})
+		public String conversion;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.points(store, conversion);
+		}
+	}
+
+	@Benchmark
+	public void points(PointsState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class LabelClustersState {
+		@Param({"h", "v", "uv"})
+		public String conversion;
+		@Param({"1", "10", "100"})
+		public int clusterRange;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.labelClusters(conversion, clusterRange);
+		}
+	}
+
+	@Benchmark
+	public void labelClusters(LabelClustersState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class ClusterHistogramsState {
+		@Param({"h", "v", "uv"})
+		public String conversion;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.clusterHistograms(conversion);
+		}
+	}
+
+	@Benchmark
+	public void clusterHistograms(ClusterHistogramsState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class RegionIndexBuildState {
+		@Param({"h", "v", "uv"})
+		public String conversion;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.regionIndexBuild(conversion);
+		}
+	}
+
+	@Benchmark
+	public void regionIndexBuild(RegionIndexBuildState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class BoxHistogramsState {
+		@Param({"scanned", "indexed"})
+		public String method;
+		@Param({"h", "v", "uv"})
+		public String conversion;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.boxHistograms(method, conversion);
+		}
+	}
+
+	@Benchmark
+	public void boxHistograms(BoxHistogramsState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class CompareClustersState {
+		@Param({"ratio", "intersection", "chi-square", "bhattacharyya", "correlation"})
+		public String similarity;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.compareClusters(similarity);
+		}
+	}
+
+	@Benchmark
+	public void compareClusters(CompareClustersState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class SceneHistogramState {
+		@Param({"single", "common"})
+		public String pool;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.sceneHistogram(pool);
+		}
+	}
+
+	@Benchmark
+	public void sceneHistogram(SceneHistogramState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class CandidateScanState {
+		@Param({"1", "8", "32"})
+		public int objects;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			stage = STAGES.candidateScan(objects);
+		}
+	}
+
+	@Benchmark
+	public void candidateScan(CandidateScanState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+
+	@State(Scope.Thread)
+	public static class DetectState {
+		@Param({"default", "no prefilter", "prefilter 0.2", "object tasks", "windows"})
+		public String finder;
+		@Param({"640x480", "1280x960", "1920x1080", "3840x2160"})
+		public String size;
+		Callable<Object> stage;
+
+		@Setup
+		public void setup() throws Exception {
+			int x = size.indexOf('x');
+			stage = STAGES.detect(finder, Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)));
+		}
+	}
+
+	@Benchmark
+	public void detect(DetectState state, Blackhole blackhole) throws Exception {
+		blackhole.consume(state.stage.call());
+	}
+}
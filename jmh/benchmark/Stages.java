@@ -0,0 +1,124 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+
+/**
+ * The detection stages measured by {@link PipelineBenchmarks}, each built over
+ * fixed inputs and returned as a call that runs only the stage. The program
+ * classes are in the default package, which a named package cannot import, and
+ * JMH only accepts benchmarks in a named package, so the stages are built by
+ * BenchmarkStages in the default package and found as the provider of this
+ * interface.
+ */
+public interface Stages {
+
+	/**
+	 * Finds the stages, listed in META-INF/services/benchmark.Stages.
+	 * @return The stages.
+	 * @throws IllegalStateException If no provider is listed.
+	 */
+	static Stages load() {
+		return ServiceLoader.load(Stages.class).findFirst()
+				.orElseThrow(() -> new IllegalStateException("no provider of benchmark.Stages"));
+	}
+
+	/**
+	 * Reads the scene file and decodes it.
+	 * @param reader "setRGB" for the reference reader, "mapped" for the mapped frame.
+	 * @return The stage.
+	 */
+	Callable<Object> read(String reader) throws IOException;
+
+	/**
+	 * Decodes a read frame into its color planes.
+	 * @param decoder "floating" for the reference conversion, "tables" for the lookup tables.
+	 * @return The stage.
+	 */
+	Callable<Object> decode(String decoder) throws IOException;
+
+	/**
+	 * Counts the histogram of the whole scene.
+	 * @param conversion The color component.
+	 * @return The stage.
+	 */
+	Callable<Object> imageHistogram(String conversion) throws IOException;
+
+	/**
+	 * Counts the histogram of an object without its background.
+	 * @param conversion The color component.
+	 * @return The stage.
+	 */
+	Callable<Object> objectHistogram(String conversion);
+
+	/**
+	 * Groups the pixels of the scene by bin and pools the frequent bins into an island matrix.
+	 * @param store "boxed" for the reference lists, "packed" for the point store.
+	 * @param conversion The color component.
+	 * @return The stage.
+	 */
+	Callable<Object> points(String store, String conversion) throws IOException;
+
+	/**
+	 * Labels the clusters of an island matrix.
+	 * @param conversion The color component the island is pooled from.
+	 * @param clusterRange The number of columns a cluster can bridge.
+	 * @return The stage.
+	 */
+	Callable<Object> labelClusters(String conversion, int clusterRange) throws IOException;
+
+	/**
+	 * Counts the histograms of every cluster large enough to be compared with an object.
+	 * @param conversion The color component.
+	 * @return The stage.
+	 */
+	Callable<Object> clusterHistograms(String conversion) throws IOException;
+
+	/**
+	 * Builds the tile index of rectangle histograms of the scene.
+	 * @param conversion The color component.
+	 * @return The stage.
+	 */
+	Callable<Object> regionIndexBuild(String conversion) throws IOException;
+
+	/**
+	 * Counts the histograms of the bounding boxes of the clusters large enough to be compared.
+	 * @param method "scanned" to count the pixels of every box, "indexed" to use the tile index.
+	 * @param conversion The color component.
+	 * @return The stage.
+	 */
+	Callable<Object> boxHistograms(String method, String conversion) throws IOException;
+
+	/**
+	 * Compares a thousand cluster histograms with an object histogram.
+	 * @param similarity "ratio" for the ratio test, or the name of a similarity metric.
+	 * @return The stage, returning the sum of the scores.
+	 */
+	Callable<Object> compareClusters(String similarity);
+
+	/**
+	 * Counts the hue histogram of a 1920x1080 scene.
+	 * @param pool "single" for one thread, "common" for row strips on the common fork-join pool.
+	 * @return The stage.
+	 */
+	Callable<Object> sceneHistogram(String pool);
+
+	/**
+	 * Scans the scene for the candidates of many objects, each pooling a band of 20 hue bins.
+	 * @param objects The number of objects.
+	 * @return The stage.
+	 */
+	Callable<Object> candidateScan(int objects) throws IOException;
+
+	/**
+	 * Reads, decodes and detects four objects in a scene, as a scene of the batch mode.
+	 * @param finder "default", "no prefilter" to label the whole bounding box of the candidates,
+	 *               "prefilter 0.2" to drop sparse blocks, "object tasks" to query the objects as
+	 *               fork-join tasks or "windows" for the sliding-window engine.
+	 * @param width The width of the scene.
+	 * @param height The height of the scene.
+	 * @return The stage.
+	 */
+	Callable<Object> detect(String finder, int width, int height) throws IOException;
+}